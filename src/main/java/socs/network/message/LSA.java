@@ -1,16 +1,141 @@
 package socs.network.message;
 
-import java.io.Serializable;
-import java.util.LinkedList;
+import socs.network.util.IPv4;
 
-public class LSA implements Serializable {
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable LSA record. Every change produces a new instance through the with methods,
+ * so one instance can be shared by the database, its snapshots and packets in flight.
+ * Links are keyed by neighbor, at most one per neighbor, and listed in the order the neighbors were added.
+ */
+public final class LSA {
 
   //IP address of the router originate this LSA
-  public String linkStateID;
-  public int lsaSeqNumber = Integer.MIN_VALUE+1;
-  public boolean delete_ack;
+  public final IPv4 linkStateID;
+  public final int lsaSeqNumber;
+  public final boolean delete_ack;
+  public final int age; //seconds since origination, when this instance was last sent
+
+  public final List<LinkDescription> links; // unmodifiable, same order on every copy and on the wire
+  private final LinkedHashMap<IPv4, LinkDescription> byNeighbor; // linkID => link, never modified
+
+  /**
+   * @param links links of the router; when a neighbor is listed twice the first link wins
+   */
+  public LSA(IPv4 linkStateID, int lsaSeqNumber, boolean delete_ack, Collection<LinkDescription> links) {
+    this(linkStateID, lsaSeqNumber, 0, delete_ack, links);
+  }
+
+  public LSA(IPv4 linkStateID, int lsaSeqNumber, int age, boolean delete_ack, Collection<LinkDescription> links) {
+    this(linkStateID, lsaSeqNumber, age, delete_ack, index(links));
+  }
+
+  private LSA(IPv4 linkStateID, int lsaSeqNumber, int age, boolean delete_ack, LinkedHashMap<IPv4, LinkDescription> byNeighbor) {
+    this.linkStateID = linkStateID;
+    this.lsaSeqNumber = lsaSeqNumber;
+    this.age = age;
+    this.delete_ack = delete_ack;
+    this.byNeighbor = byNeighbor;
+    this.links = Collections.unmodifiableList(new ArrayList<LinkDescription>(byNeighbor.values()));
+  }
+
+  private static LinkedHashMap<IPv4, LinkDescription> index(Collection<LinkDescription> links) {
+    LinkedHashMap<IPv4, LinkDescription> byNeighbor = new LinkedHashMap<IPv4, LinkDescription>(links.size() * 4 / 3 + 1);
+    for (LinkDescription ld : links)
+      byNeighbor.putIfAbsent(ld.getLinkID(), ld);
+    return byNeighbor;
+  }
+
+  /**
+   * Returns the link to a neighbor
+   * @param neighborID simulated IP of the neighbor
+   * @return link, null if the LSA has none to it
+   */
+  public LinkDescription getLink(IPv4 neighborID) {
+    return byNeighbor.get(neighborID);
+  }
+
+  /**
+   * @param link link to look for
+   * @return true if the LSA holds a link equal to it
+   */
+  public boolean hasLink(LinkDescription link) {
+    return link.equals(byNeighbor.get(link.getLinkID()));
+  }
+
+  /**
+   * Returns the links of an older instance that this one no longer holds, in a single pass
+   * @param older previous instance of the LSA
+   * @return links removed or changed since the older instance
+   */
+  public List<LinkDescription> removedSince(LSA older) {
+    List<LinkDescription> removed = new ArrayList<LinkDescription>();
+    for (LinkDescription ld : older.links) {
+      if (!hasLink(ld))
+        removed.add(ld);
+    }
+    return removed;
+  }
+
+  /**
+   * Returns a new origination of this LSA with the given sequence number, age 0
+   * @param lsaSeqNumber sequence number
+   * @return new instance
+   */
+  public LSA withSequenceNumber(int lsaSeqNumber) {
+    return new LSA(linkStateID, lsaSeqNumber, 0, delete_ack, byNeighbor);
+  }
+
+  public LSA withDeleteAck(boolean delete_ack) {
+    return new LSA(linkStateID, lsaSeqNumber, age, delete_ack, byNeighbor);
+  }
+
+  public LSA withAge(int age) {
+    return new LSA(linkStateID, lsaSeqNumber, age, delete_ack, byNeighbor);
+  }
+
+  /**
+   * Returns a copy holding the link, replacing the one to the same neighbor in place,
+   * with the next sequence number and age 0
+   * @param link link to add
+   * @return new instance
+   */
+  public LSA withLink(LinkDescription link) {
+    LinkedHashMap<IPv4, LinkDescription> next = new LinkedHashMap<IPv4, LinkDescription>(byNeighbor);
+    next.put(link.getLinkID(), link);
+    return new LSA(linkStateID, lsaSeqNumber + 1, 0, delete_ack, next);
+  }
+
+  /**
+   * Returns a copy without the link, if it holds an equal one, with the next sequence number and age 0
+   * @param link link to remove
+   * @return new instance
+   */
+  public LSA withoutLink(LinkDescription link) {
+    LinkedHashMap<IPv4, LinkDescription> next = new LinkedHashMap<IPv4, LinkDescription>(byNeighbor);
+    next.remove(link.getLinkID(), link);
+    return new LSA(linkStateID, lsaSeqNumber + 1, 0, delete_ack, next);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof LSA))
+      return false;
+    LSA lhs = (LSA) obj;
+    return lhs.lsaSeqNumber == lsaSeqNumber && lhs.age == age && lhs.delete_ack == delete_ack
+            && Objects.equals(lhs.linkStateID, linkStateID) && lhs.links.equals(links);
+  }
 
-  public LinkedList<LinkDescription> links = new LinkedList<LinkDescription>();
+  @Override
+  public int hashCode() {
+    return Objects.hash(linkStateID, lsaSeqNumber, age, delete_ack, links);
+  }
 
   @Override
   public String toString() {
@@ -0,0 +1,27 @@
+package socs.network.message;
+
+import socs.network.util.IPv4;
+
+/**
+ * Identifies an LSA instance without its links.
+ * Exchanged in Database Description and LS Request packets.
+ */
+public class LSAHeader {
+
+  public final IPv4 linkStateID;
+  public final int lsaSeqNumber;
+
+  public LSAHeader(IPv4 linkStateID, int lsaSeqNumber) {
+    this.linkStateID = linkStateID;
+    this.lsaSeqNumber = lsaSeqNumber;
+  }
+
+  public LSAHeader(LSA lsa) {
+    this(lsa.linkStateID, lsa.lsaSeqNumber);
+  }
+
+  @Override
+  public String toString() {
+    return linkStateID + ":" + lsaSeqNumber;
+  }
+}
@@ -1,16 +1,20 @@
 package socs.network.message;
 
 
-import java.io.Serializable;
+import socs.network.util.IPv4;
+
 import java.util.Objects;
 
-public class LinkDescription implements Serializable {
-  private String linkID;
-  private int portNum;
-  private int tosMetrics;
+/**
+ * Immutable description of one link of an LSA
+ */
+public final class LinkDescription {
+  private final IPv4 linkID;
+  private final int portNum;
+  private final int tosMetrics;
 
 
-  public LinkDescription(String linkID, int portNum, int tosMetrics) {
+  public LinkDescription(IPv4 linkID, int portNum, int tosMetrics) {
     this.linkID = linkID;
     this.portNum = portNum;
     this.tosMetrics = tosMetrics;
@@ -23,7 +27,7 @@ public class LinkDescription implements Serializable {
   }
 
 
-  public String getLinkID() {
+  public IPv4 getLinkID() {
     return linkID;
   }
 
@@ -59,12 +63,12 @@ public class LinkDescription implements Serializable {
 
   public static class LinkDescriptionBuilder {
 
-    private String linkID;
+    private IPv4 linkID;
     private int portNum;
     private int tosMetrics;
 
 
-    public LinkDescriptionBuilder linkID(String linkID) {
+    public LinkDescriptionBuilder linkID(IPv4 linkID) {
       this.linkID = linkID;
       return this;
     }
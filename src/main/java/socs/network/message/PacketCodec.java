@@ -0,0 +1,282 @@
+package socs.network.message;
+
+import socs.network.util.IPv4;
+import socs.network.util.Utility;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Vector;
+
+/**
+ * Wire format of SOSPF packets.
+ * Every packet travels as a frame: a 4 byte big-endian length followed by the encoded packet.
+ * Framing lets both the stream based and the selector based transports find packet boundaries.
+ *
+ * Packet layout (version 4), all fields big-endian, IPv4 addresses packed in 4 bytes (0 for none).
+ * srcIP, LSA and link IDs are required, a packet carrying 0 for one of them is rejected:
+ *   version:1 type:1 srcProcessIP:4 srcProcessPort:2 srcIP:4 dstIP:4 routerID:4 neighborID:4 weight:2
+ *   lsaCount:4 (-1 for no array), followed by lsaCount LSA records
+ *   headerCount:4 (-1 for no array), followed by headerCount LSA header records
+ *   ttl:1 payloadLength:4 (-1 for no payload), followed by payloadLength bytes
+ * LSA record:
+ *   linkStateID:4 lsaSeqNumber:4 age:2 (seconds) flags:1 (bit 0 delete_ack) linkCount:2, followed by linkCount link records
+ * Link record:
+ *   linkID:4 portNum:2 tosMetrics:2
+ * LSA header record:
+ *   linkStateID:4 lsaSeqNumber:4
+ */
+public class PacketCodec {
+
+    public static final int HEADER_LENGTH = 4;
+    public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    public static final byte VERSION = 4;
+
+    private static final int PACKET_HEADER_SIZE = 39;
+    private static final int LSA_HEADER_SIZE = 13;
+    private static final int LINK_SIZE = 8;
+    private static final int LSA_ID_SIZE = 8;
+
+    private static final byte FLAG_DELETE_ACK = 1;
+
+    private PacketCodec() {
+    }
+
+    /**
+     * Returns the encoded size of a packet body
+     * @param packet packet to measure
+     * @return size in bytes
+     */
+    public static int sizeOf(SOSPFPacket packet) {
+        int size = PACKET_HEADER_SIZE;
+        if (packet.lsaArray != null) {
+            for (LSA lsa : packet.lsaArray)
+                size += sizeOf(lsa);
+        }
+        if (packet.lsaHeaders != null)
+            size += LSA_ID_SIZE * packet.lsaHeaders.size();
+        if (packet.payload != null)
+            size += packet.payload.length;
+        return size;
+    }
+
+    public static int sizeOf(LSA lsa) {
+        return LSA_HEADER_SIZE + LINK_SIZE * lsa.links.size();
+    }
+
+    /**
+     * Encodes a packet body (without the frame header)
+     * @param packet packet to encode
+     * @return encoded bytes
+     * @throws IOException a field does not fit the wire format
+     */
+    public static byte[] encode(SOSPFPacket packet) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(sizeOf(packet));
+        encode(buffer, packet);
+        return buffer.array();
+    }
+
+    private static void encode(ByteBuffer buffer, SOSPFPacket packet) throws IOException {
+        buffer.put(VERSION);
+        buffer.put((byte) packet.sospfType);
+        buffer.putInt(Utility.ipToInt(packet.srcProcessIP));
+        buffer.putShort(packet.srcProcessPort);
+        buffer.putInt(IPv4.toInt(packet.srcIP));
+        buffer.putInt(IPv4.toInt(packet.dstIP));
+        buffer.putInt(IPv4.toInt(packet.routerID));
+        buffer.putInt(IPv4.toInt(packet.neighborID));
+        buffer.putShort(packet.weight);
+
+        if (packet.lsaArray == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(packet.lsaArray.size());
+            for (LSA lsa : packet.lsaArray)
+                writeLSA(buffer, lsa);
+        }
+
+        if (packet.lsaHeaders == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(packet.lsaHeaders.size());
+            for (LSAHeader header : packet.lsaHeaders) {
+                buffer.putInt(IPv4.toInt(header.linkStateID));
+                buffer.putInt(header.lsaSeqNumber);
+            }
+        }
+
+        if (packet.ttl < 0 || packet.ttl > 0xFF)
+            throw new IOException("Field ttl out of range: " + packet.ttl);
+        buffer.put((byte) packet.ttl);
+        if (packet.payload == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(packet.payload.length);
+            buffer.put(packet.payload);
+        }
+    }
+
+    /**
+     * Writes one fixed-layout LSA record
+     * @param buffer destination, must have sizeOf(lsa) bytes remaining
+     * @param lsa LSA to write
+     * @throws IOException a field does not fit the wire format
+     */
+    public static void writeLSA(ByteBuffer buffer, LSA lsa) throws IOException {
+        buffer.putInt(IPv4.toInt(lsa.linkStateID));
+        buffer.putInt(lsa.lsaSeqNumber);
+        if (lsa.age < 0 || lsa.age > 0xFFFF)
+            throw new IOException("Field age out of range: " + lsa.age);
+        buffer.putShort((short) lsa.age);
+        buffer.put(lsa.delete_ack ? FLAG_DELETE_ACK : 0);
+        if (lsa.links.size() > 0xFFFF)
+            throw new IOException("Too many links in LSA of " + lsa.linkStateID);
+        buffer.putShort((short) lsa.links.size());
+        for (LinkDescription ld : lsa.links) {
+            buffer.putInt(IPv4.toInt(ld.getLinkID()));
+            buffer.putShort(toShort(ld.getPortNum(), "port number"));
+            buffer.putShort(toShort(ld.getTosMetrics(), "metric"));
+        }
+    }
+
+    /**
+     * Reads one fixed-layout LSA record
+     * @param buffer source positioned at the record
+     * @return decoded LSA
+     * @throws IOException the LSA or one of its links has no router ID
+     */
+    public static LSA readLSA(ByteBuffer buffer) throws IOException {
+        IPv4 linkStateID = readAddress(buffer, "linkStateID");
+        int lsaSeqNumber = buffer.getInt();
+        int age = buffer.getShort() & 0xFFFF;
+        boolean deleteAck = (buffer.get() & FLAG_DELETE_ACK) != 0;
+        int linkCount = buffer.getShort() & 0xFFFF;
+        ArrayList<LinkDescription> links = new ArrayList<>(linkCount);
+        for (int i = 0; i < linkCount; i++) {
+            IPv4 linkID = readAddress(buffer, "linkID");
+            int portNum = buffer.getShort();
+            int tosMetrics = buffer.getShort();
+            links.add(new LinkDescription(linkID, portNum, tosMetrics));
+        }
+        return new LSA(linkStateID, lsaSeqNumber, age, deleteAck, links);
+    }
+
+    /**
+     * Decodes a packet body (without the frame header)
+     * @param body buffer holding exactly one encoded packet
+     * @return decoded packet
+     * @throws IOException malformed packet
+     */
+    public static SOSPFPacket decode(ByteBuffer body) throws IOException {
+        try {
+            byte version = body.get();
+            if (version != VERSION)
+                throw new IOException("Unsupported packet version " + version);
+
+            SOSPFPacket packet = new SOSPFPacket();
+            packet.sospfType = body.get();
+            packet.srcProcessIP = Utility.intToIp(body.getInt());
+            packet.srcProcessPort = body.getShort();
+            packet.srcIP = readAddress(body, "srcIP");
+            packet.dstIP = IPv4.fromInt(body.getInt());
+            packet.routerID = IPv4.fromInt(body.getInt());
+            packet.neighborID = IPv4.fromInt(body.getInt());
+            packet.weight = body.getShort();
+
+            int lsaCount = body.getInt();
+            if (lsaCount >= 0) {
+                if (lsaCount > body.remaining() / LSA_HEADER_SIZE)
+                    throw new IOException("Invalid LSA count " + lsaCount);
+                packet.lsaArray = new Vector<>(lsaCount);
+                for (int i = 0; i < lsaCount; i++)
+                    packet.lsaArray.add(readLSA(body));
+            }
+
+            int headerCount = body.getInt();
+            if (headerCount >= 0) {
+                if (headerCount > body.remaining() / LSA_ID_SIZE)
+                    throw new IOException("Invalid LSA header count " + headerCount);
+                packet.lsaHeaders = new Vector<>(headerCount);
+                for (int i = 0; i < headerCount; i++)
+                    packet.lsaHeaders.add(new LSAHeader(readAddress(body, "linkStateID"), body.getInt()));
+            }
+
+            packet.ttl = (short) (body.get() & 0xFF);
+            int payloadLength = body.getInt();
+            if (payloadLength >= 0) {
+                if (payloadLength > body.remaining())
+                    throw new IOException("Invalid payload length " + payloadLength);
+                packet.payload = new byte[payloadLength];
+                body.get(packet.payload);
+            }
+
+            if (body.hasRemaining())
+                throw new IOException("Trailing bytes after packet");
+            return packet;
+
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated packet", e);
+        }
+    }
+
+    /**
+     * Encodes a packet as a complete frame
+     * @param packet packet to encode
+     * @return buffer ready to be written
+     * @throws IOException encoding error
+     */
+    public static ByteBuffer encodeFrame(SOSPFPacket packet) throws IOException {
+        int size = sizeOf(packet);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + size);
+        frame.putInt(size);
+        encode(frame, packet);
+        frame.flip();
+        return frame;
+    }
+
+    public static void writeFrame(DataOutputStream out, SOSPFPacket packet) throws IOException {
+        ByteBuffer frame = encodeFrame(packet);
+        out.write(frame.array(), 0, frame.limit());
+        out.flush();
+    }
+
+    /**
+     * Blocks until a full frame is read
+     * @param in stream to read from
+     * @return decoded packet
+     * @throws IOException stream error or malformed frame
+     */
+    public static SOSPFPacket readFrame(DataInputStream in) throws IOException {
+        int length = checkLength(in.readInt());
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return decode(ByteBuffer.wrap(body));
+    }
+
+    public static int checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_LENGTH)
+            throw new IOException("Invalid frame length " + length);
+        return length;
+    }
+
+    /**
+     * Reads a required address
+     * @throws IOException the address is 0, i.e. missing
+     */
+    private static IPv4 readAddress(ByteBuffer buffer, String field) throws IOException {
+        IPv4 address = IPv4.fromInt(buffer.getInt());
+        if (address == null)
+            throw new IOException("Missing " + field);
+        return address;
+    }
+
+    private static short toShort(int value, String field) throws IOException {
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE)
+            throw new IOException("Field " + field + " out of range: " + value);
+        return (short) value;
+    }
+}
@@ -1,11 +1,10 @@
 package socs.network.message;
 
-import java.io.Serializable;
-import java.util.Vector;
+import socs.network.util.IPv4;
 
-public class SOSPFPacket implements Serializable {
+import java.util.Vector;
 
-    static final long serialVersionUID = 42L;
+public class SOSPFPacket {
 
 
     //for inter-process communication
@@ -13,23 +12,30 @@ public class SOSPFPacket implements Serializable {
     public short srcProcessPort;
 
     //simulated IP address
-    public String srcIP;
-    public String dstIP;
+    public IPv4 srcIP;
+    public IPv4 dstIP;
 
     //common header
-    public short sospfType; //0 - HELLO, 1 - LinkState Update
-    public String routerID;
+    public short sospfType; //0 - HELLO, 1 - LinkState Update, 2 - Database Description, 3 - LinkState Request, 4 - Data
+    public IPv4 routerID;
 
     //used by HELLO message to identify the sender of the message
     //e.g. when router A sends HELLO to its neighbor, it has to fill this field with its own
     //simulated IP address
-    public String neighborID; //neighbor's simulated IP address
+    public IPv4 neighborID; //neighbor's simulated IP address
 
     //used by LSAUPDATE
     public Vector<LSA> lsaArray = null;
 
+    //used by DBD (headers of every LSA held) and LSREQUEST (headers of the LSAs wanted)
+    public Vector<LSAHeader> lsaHeaders = null;
+
     public short weight;
 
+    //used by DATA, srcIP and dstIP being the end points of the packet
+    public short ttl; //hops left, dropped when it reaches 0
+    public byte[] payload = null;
+
     public SOSPFPacket() {
     }
 
@@ -42,21 +48,27 @@ public class SOSPFPacket implements Serializable {
         routerID = b.routerID;
         neighborID = b.neighborID;
         lsaArray = b.lsaArray;
+        lsaHeaders = b.lsaHeaders;
         weight = b.weight;
+        ttl = b.ttl;
+        payload = b.payload;
     }
 
     public static class Builder {
 
         private String srcProcessIP;
         private short srcProcessPort;
-        private String srcIP;
-        private String dstIP;
+        private IPv4 srcIP;
+        private IPv4 dstIP;
         private short sospfType;
-        private String routerID;
+        private IPv4 routerID;
         private short weight;
 
-        private String neighborID;
+        private IPv4 neighborID;
         private Vector<LSA> lsaArray = null;
+        private Vector<LSAHeader> lsaHeaders = null;
+        private short ttl;
+        private byte[] payload = null;
 
         public Builder srcProccessIP(String ip) {
             this.srcProcessIP = ip;
@@ -68,12 +80,12 @@ public class SOSPFPacket implements Serializable {
             return this;
         }
 
-        public Builder srcIP(String ip) {
+        public Builder srcIP(IPv4 ip) {
             this.srcIP = ip;
             return this;
         }
 
-        public Builder dstIP(String ip) {
+        public Builder dstIP(IPv4 ip) {
             this.dstIP = ip;
             return this;
         }
@@ -88,12 +100,27 @@ public class SOSPFPacket implements Serializable {
             return this;
         }
 
-        public Builder routerID(String id) {
+        public Builder DBD() {
+            this.sospfType = 2;
+            return this;
+        }
+
+        public Builder LSREQUEST() {
+            this.sospfType = 3;
+            return this;
+        }
+
+        public Builder DATA() {
+            this.sospfType = 4;
+            return this;
+        }
+
+        public Builder routerID(IPv4 id) {
             this.routerID = id;
             return this;
         }
 
-        public Builder neighborID(String id) {
+        public Builder neighborID(IPv4 id) {
             this.neighborID = id;
             return this;
         }
@@ -103,11 +130,26 @@ public class SOSPFPacket implements Serializable {
             return this;
         }
 
+        public Builder lsaHeaders(Vector<LSAHeader> vector) {
+            this.lsaHeaders = vector;
+            return this;
+        }
+
         public Builder weight(short weight) {
             this.weight = weight;
             return this;
         }
 
+        public Builder ttl(short ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public Builder payload(byte[] payload) {
+            this.payload = payload;
+            return this;
+        }
+
         public SOSPFPacket build() {
             return new SOSPFPacket(this);
         }
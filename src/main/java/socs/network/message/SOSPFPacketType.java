@@ -4,5 +4,5 @@ package socs.network.message;
  * Created by ericschaal on 2017-02-28.
  */
 public enum SOSPFPacketType {
-    HELLO,LSUPDATE,UNKNOWN
+    HELLO,LSUPDATE,DBD,LSREQUEST,DATA,UNKNOWN
 }
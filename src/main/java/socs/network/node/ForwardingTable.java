@@ -0,0 +1,58 @@
+package socs.network.node;
+
+import socs.network.util.IPv4;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Forwarding table (FIB) of the data plane: destination => links to the equal-cost next hops.
+ * Built from a routing table after each route computation and never modified afterwards,
+ * so the router swaps in a new instance and the forwarding path reads it without locking.
+ */
+public class ForwardingTable {
+
+    public static final ForwardingTable EMPTY = new ForwardingTable(Collections.<IPv4, Link[]>emptyMap());
+
+    private final Map<IPv4, Link[]> entries;
+
+    private ForwardingTable(Map<IPv4, Link[]> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Resolves the next hops of every route to the links of the router
+     * @param table routing table to derive from
+     * @param neighbors link to a neighbor by simulated IP, null if there is none
+     * @return forwarding table
+     */
+    public static ForwardingTable build(RoutingTable table, Function<IPv4, Link> neighbors) {
+        HashMap<IPv4, Link[]> entries = new HashMap<IPv4, Link[]>();
+        for (RoutingTable.Route route : table.getRoutes()) {
+            if (route.previousHop == null) // this router
+                continue;
+            Link[] links = route.nextHops.stream()
+                    .map(neighbors)
+                    .filter(link -> link != null)
+                    .toArray(Link[]::new);
+            if (links.length > 0)
+                entries.put(route.destination, links);
+        }
+        return new ForwardingTable(Collections.unmodifiableMap(entries));
+    }
+
+    /**
+     * Returns the link to forward a packet on, the same one for the same flow
+     * @param destinationIP destination of the packet
+     * @param flowHash hash of the flow, spreads flows over equal-cost next hops
+     * @return link, null if there is no route
+     */
+    public Link lookup(IPv4 destinationIP, int flowHash) {
+        Link[] links = entries.get(destinationIP);
+        if (links == null)
+            return null;
+        return links.length == 1 ? links[0] : links[Math.floorMod(flowHash, links.length)];
+    }
+}
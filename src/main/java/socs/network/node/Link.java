@@ -1,5 +1,8 @@
 package socs.network.node;
 
+import socs.network.runner.Channel;
+import socs.network.util.IPv4;
+
 /**
  * Invariants :
  * Links are symmetric
@@ -9,6 +12,7 @@ public class Link {
     private final RouterDescription router1;
     private final RouterDescription router2;
     private short weight;
+    private Channel channel; // persistent connection to the other end
 
     public Link(RouterDescription r1, RouterDescription r2, short weight) {
         router1 = r1;
@@ -51,7 +55,7 @@ public class Link {
      * @param simulatedIP caller IP
      * @return router description of the endpoint router.
      */
-    public RouterDescription getOtherEnd(String simulatedIP) {
+    public RouterDescription getOtherEnd(IPv4 simulatedIP) {
         if (router1.getSimulatedIPAddress().equals(simulatedIP))
             return router2;
         else if (router2.getSimulatedIPAddress().equals(simulatedIP))
@@ -60,7 +64,27 @@ public class Link {
         return null;
     }
 
+    /**
+     * Returns the persistent channel to the other end, created on first use.
+     *
+     * @param simulatedIP caller IP
+     * @param connectTimeout connect timeout of a new channel, in milliseconds
+     * @return channel to the endpoint router
+     */
+    public synchronized Channel getChannel(IPv4 simulatedIP, int connectTimeout) {
+        if (channel == null)
+            channel = new Channel(getOtherEnd(simulatedIP), connectTimeout);
+        return channel;
+    }
 
+    /**
+     * Closes the channel to the other end, if any. The next getChannel opens a new one.
+     */
+    public synchronized void closeChannel() {
+        if (channel != null)
+            channel.close();
+        channel = null;
+    }
 
 
 }
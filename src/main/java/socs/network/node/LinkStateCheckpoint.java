@@ -0,0 +1,94 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.message.PacketCodec;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Checkpoint of the link state database in a memory-mapped file, for warm restarts.
+ *
+ * Layout, big-endian:
+ *   magic:4 version:1 (PacketCodec.VERSION) savedAt:8 (epoch milliseconds) lsaCount:4,
+ *   followed by lsaCount LSA records in the PacketCodec layout
+ * The file is written to a temporary sibling and moved in place, so a crash never leaves a partial checkpoint.
+ */
+public class LinkStateCheckpoint {
+
+    private static final int MAGIC = 0x534F5350; // "SOSP"
+    private static final int HEADER_SIZE = 17;
+
+    private final Path path;
+
+    public LinkStateCheckpoint(Path path) {
+        this.path = path;
+    }
+
+    public boolean exists() {
+        return Files.isRegularFile(path);
+    }
+
+    /**
+     * Writes the given LSAs, replacing the previous checkpoint
+     * @param lsas LSAs carrying their current age
+     * @throws IOException write error
+     */
+    public void write(Collection<LSA> lsas) throws IOException {
+        long size = HEADER_SIZE;
+        for (LSA lsa : lsas)
+            size += PacketCodec.sizeOf(lsa);
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.put(PacketCodec.VERSION);
+            buffer.putLong(System.currentTimeMillis());
+            buffer.putInt(lsas.size());
+            for (LSA lsa : lsas)
+                PacketCodec.writeLSA(buffer, lsa);
+            buffer.force();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the checkpoint, adding the time elapsed since it was written to the age of every LSA
+     * @return LSAs of the checkpoint
+     * @throws IOException read error or malformed checkpoint
+     */
+    public List<LSA> read() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a link state checkpoint: " + path);
+            byte version = buffer.get();
+            if (version != PacketCodec.VERSION)
+                throw new IOException("Unsupported checkpoint version " + version);
+            long elapsed = Math.max(0, (System.currentTimeMillis() - buffer.getLong()) / 1000);
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining())
+                throw new IOException("Invalid LSA count " + count);
+
+            List<LSA> lsas = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                LSA lsa = PacketCodec.readLSA(buffer);
+                lsas.add(lsa.withAge((int) Math.min(0xFFFF, lsa.age + elapsed)));
+            }
+            return lsas;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated checkpoint " + path, e);
+        }
+    }
+}
@@ -1,53 +1,123 @@
 package socs.network.node;
 
 import socs.network.message.LSA;
+import socs.network.message.LSAHeader;
 import socs.network.message.LinkDescription;
-import socs.network.util.ds.DijkstraAlgorithm;
+import socs.network.util.IPv4;
+import socs.network.util.ds.AllPairsSPF;
+import socs.network.util.ds.CompactGraph;
 import socs.network.util.ds.Edge;
-import socs.network.util.ds.Graph;
-import socs.network.util.ds.Vertex;
+import socs.network.util.ds.HashedWheelTimer;
+import socs.network.util.ds.IncrementalSPF;
 import socs.network.util.error.DatabaseException;
 import socs.network.util.error.NoPath;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
+/**
+ * Link state database of the router.
+ *
+ * Every mutation goes through one synchronized writer path which stores a new immutable LSA instance,
+ * then publishes an immutable snapshot of the store (copy on write). Readers take the current
+ * snapshot without locking: floods, route computation and printing all see one consistent version.
+ */
 public class LinkStateDatabase {
 
-  //linkStateID => LSAInstance
-  private HashMap<String, LSA> _store = new HashMap<String, LSA>();
+  /**
+   * Immutable view of the database at one version
+   */
+  public static class Snapshot {
+    private final long version;
+    private final Map<IPv4, LSA> lsas; //linkStateID => LSAInstance
+
+    private Snapshot(long version, Map<IPv4, LSA> lsas) {
+      this.version = version;
+      this.lsas = lsas;
+    }
+
+    public long getVersion() {
+      return version;
+    }
+
+    public LSA get(IPv4 linkStateID) {
+      return lsas.get(linkStateID);
+    }
+
+    public Collection<LSA> getAll() {
+      return lsas.values();
+    }
+  }
+
+  //linkStateID => LSAInstance, only accessed by the writer path
+  private HashMap<IPv4, LSA> _store = new HashMap<IPv4, LSA>();
+
+  //linkStateID => sequence number of the instance last flooded
+  private HashMap<IPv4, Integer> _flooded = new HashMap<IPv4, Integer>();
 
   private RouterDescription rd = null;
 
-  public LinkStateDatabase(RouterDescription routerDescription) {
+  //incremented on every mutation of the store
+  private long version = 0;
+
+  //last published state of the store
+  private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>();
+
+  //routing table of the last version asked for
+  private volatile RoutingTable routingTable = null;
+
+  //shortest-path tree, null when every table is computed with a full SPF
+  private IncrementalSPF spf = null;
+
+  //routers whose LSA changed since the tree was last repaired, repaired when a routing table is asked for
+  private HashSet<IPv4> spfDirty = new HashSet<IPv4>();
+
+  //last table built from the tree, the next one only recomputes the routes the repairs affected
+  private RoutingTable spfTable = null;
+
+  //notified after every mutation, e.g. to schedule a route computation
+  private Runnable changeListener = null;
+
+  //aging: an LSA is removed once its age reaches maxAge, 0 when aging is off
+  private int maxAge = 0;
+  private HashedWheelTimer timer = null;
+  private Executor expiryExecutor = null;
+  private Consumer<LSA> expiryListener = null;
+  private HashMap<IPv4, HashedWheelTimer.Timeout> expiries = new HashMap<IPv4, HashedWheelTimer.Timeout>();
+  //linkStateID => nanoTime the instance was stored at
+  private final ConcurrentHashMap<IPv4, Long> installedAt = new ConcurrentHashMap<IPv4, Long>();
+
+  public LinkStateDatabase(RouterDescription routerDescription, boolean incremental) {
     rd = routerDescription;
+    if (incremental)
+      spf = new IncrementalSPF(rd.getSimulatedIPAddress());
     LSA l = initLinkStateDatabase();
     _store.put(l.linkStateID, l);
+    updateSPF(l.linkStateID);
+    publish();
   }
 
   /**
    * output the shortest path from this router to the destination with the given IP address
    */
-  public String getShortestPath(String destinationIP) throws NoPath {
-
-    Graph graph = new Graph(getAllLSA());
-    LinkedList<Edge> path;
-
-    DijkstraAlgorithm alg = new DijkstraAlgorithm(graph);
-
-    Vertex source = graph.getVertexWith(rd.getSimulatedIPAddress());
-    Vertex destination = graph.getVertexWith(destinationIP);
+  public String getShortestPath(IPv4 destinationIP) throws NoPath {
 
-    if (Objects.isNull(source))
-      throw new RuntimeException("Couldn't find source vertex."); // should never happen
-
-    if (Objects.isNull(destination)) // cant find destination
-      throw new NoPath();
-
-    alg.start(source);
-    path = alg.getPathWithDistance(destination);
+    LinkedList<Edge> path = getRoutingTable().getPath(destinationIP);
 
     StringBuilder sb = new StringBuilder();
 
@@ -70,50 +140,425 @@ public class LinkStateDatabase {
 
   }
 
+  /**
+   * Returns the routing table of the current version, computing it only if the store changed since the last call.
+   * A full SPF runs on the snapshot without locking; the incremental tree is repaired for the routers changed
+   * since the last call under the writer lock, so a burst of changes costs one repair per router,
+   * and only the routes below the repaired parts of the tree are recomputed.
+   * @return routing table from this router
+   */
+  public RoutingTable getRoutingTable() {
+    Snapshot current = snapshot.get();
+    RoutingTable table = routingTable;
+    if (table != null && table.getVersion() == current.getVersion())
+      return table;
+
+    if (spf == null) {
+      table = RoutingTable.compute(current.getVersion(), rd.getSimulatedIPAddress(), current.getAll());
+    } else {
+      synchronized (this) {
+        repairSPF();
+        table = spfTable = nextSPFTable();
+      }
+    }
+
+    synchronized (this) {
+      if (routingTable == null || routingTable.getVersion() < table.getVersion())
+        routingTable = table;
+    }
+    return table;
+  }
+
+  /**
+   * Computes the shortest path between every pair of routers of the database.
+   * The graph is built from the current snapshot, the SPFs run on the pool.
+   * @param pool pool running one SPF per source
+   * @param consumer receives every pair, from several threads at once
+   */
+  public void getAllShortestPaths(ForkJoinPool pool, AllPairsSPF.PathConsumer consumer) {
+    CompactGraph graph = new CompactGraph(snapshot.get().getAll());
+    new AllPairsSPF(graph).run(pool, consumer);
+  }
+
+  /**
+   * Checks the incremental shortest-path tree against a full SPF over the store
+   * @return destinations whose cost differs, empty if both agree
+   */
+  public synchronized LinkedList<IPv4> verifySPF() {
+    LinkedList<IPv4> mismatches = new LinkedList<IPv4>();
+    RoutingTable current = getRoutingTable();
+    RoutingTable full = RoutingTable.compute(version, rd.getSimulatedIPAddress(), _store.values());
+    for (RoutingTable.Route route : full.getRoutes()) {
+      RoutingTable.Route other = current.getRoute(route.destination);
+      if (other == null || other.cost != route.cost)
+        mismatches.add(route.destination);
+    }
+    for (RoutingTable.Route route : current.getRoutes()) {
+      if (full.getRoute(route.destination) == null)
+        mismatches.add(route.destination);
+    }
+    return mismatches;
+  }
+
+  public boolean isIncrementalSPF() {
+    return spf != null;
+  }
+
+  public synchronized void setChangeListener(Runnable listener) {
+    changeListener = listener;
+  }
+
+  /**
+   * Single writer path: replaces or removes the LSA of a router and publishes the new state
+   * @param linkStateID router whose LSA changes
+   * @param instance new instance, null to remove it
+   * @return previous instance
+   */
+  private LSA update(IPv4 linkStateID, LSA instance) {
+    LSA previous = apply(linkStateID, instance);
+    if (instance != null || previous != null)
+      commit();
+    return previous;
+  }
+
+  /**
+   * Changes the store and the aging for one router and marks it for the shortest-path tree, without publishing
+   * @return previous instance
+   */
+  private LSA apply(IPv4 linkStateID, LSA instance) {
+    LSA previous = instance == null ? _store.remove(linkStateID) : _store.put(linkStateID, instance);
+    if (instance == null)
+      _flooded.remove(linkStateID);
+    if (instance == null && previous == null)
+      return null;
+
+    if (instance == null)
+      installedAt.remove(linkStateID);
+    else
+      installedAt.put(linkStateID, System.nanoTime());
+    scheduleExpiry(linkStateID, instance);
+    updateSPF(linkStateID);
+    return previous;
+  }
+
+  /**
+   * Publishes the changes applied since the last commit as one new version
+   */
+  private void commit() {
+    version++;
+    publish();
+    if (changeListener != null)
+      changeListener.run();
+  }
+
+  /**
+   * Loads the LSAs of a checkpoint as one new version.
+   * The LSA of this router is taken with its links, so routes are known before neighbors are reached again,
+   * and its sequence number moves past the saved one so that neighbors replace the instance they kept.
+   * The router withdraws the restored links its neighbors do not confirm in time.
+   * LSAs that reached MaxAge meanwhile are skipped.
+   * @param lsas LSAs of the checkpoint
+   * @return number of LSAs of other routers loaded
+   */
+  public synchronized int restore(Collection<LSA> lsas) {
+    IPv4 self = rd.getSimulatedIPAddress();
+    int loaded = 0;
+    boolean changed = false;
+    for (LSA lsa : lsas) {
+      if (lsa.linkStateID.equals(self)) {
+        LSA own = _store.get(self);
+        if (lsa.lsaSeqNumber >= own.lsaSeqNumber) {
+          apply(self, lsa.withSequenceNumber(lsa.lsaSeqNumber + 1).withDeleteAck(false));
+          changed = true;
+        }
+      } else if (maxAge == 0 || lsa.age < maxAge) {
+        apply(lsa.linkStateID, lsa);
+        changed = true;
+        loaded++;
+      }
+    }
+    if (changed)
+      commit();
+    return loaded;
+  }
+
+  /**
+   * Starts aging the LSAs of other routers: each one is removed when its age reaches maxAge,
+   * unless a newer instance replaced it. The LSA of this router is refreshed by the router instead.
+   * @param timer wheel the expiries are scheduled on
+   * @param executor runs each expiry when it fires, e.g. directly on the timer thread or on the router event loop
+   * @param maxAge age in seconds an LSA is removed at
+   * @param listener called with every expired LSA, on the executor
+   */
+  public synchronized void startAging(HashedWheelTimer timer, Executor executor, int maxAge, Consumer<LSA> listener) {
+    if (maxAge <= 0 || maxAge > 0xFFFF)
+      throw new IllegalArgumentException("Invalid LSA max age " + maxAge);
+    this.timer = timer;
+    this.expiryExecutor = executor;
+    this.maxAge = maxAge;
+    this.expiryListener = listener;
+    for (LSA lsa : _store.values())
+      scheduleExpiry(lsa.linkStateID, lsa);
+  }
+
+  private void scheduleExpiry(IPv4 linkStateID, LSA instance) {
+    if (timer == null || linkStateID.equals(rd.getSimulatedIPAddress()))
+      return;
+    HashedWheelTimer.Timeout previous = instance == null ? expiries.remove(linkStateID)
+            : expiries.put(linkStateID, timer.schedule(() -> expiryExecutor.execute(() -> expire(linkStateID, instance)),
+                    Math.max(1, maxAge - instance.age), TimeUnit.SECONDS));
+    if (previous != null)
+      previous.cancel();
+  }
+
+  /**
+   * Removes an LSA that reached MaxAge, if it was not replaced meanwhile
+   */
+  private void expire(IPv4 linkStateID, LSA instance) {
+    synchronized (this) {
+      if (_store.get(linkStateID) != instance)
+        return;
+      expiries.remove(linkStateID);
+      update(linkStateID, null);
+    }
+    if (expiryListener != null)
+      expiryListener.accept(instance);
+  }
+
+  /**
+   * Returns an LSA with its age brought up to date, to be sent to a neighbor
+   * @param lsa instance of the database
+   * @return instance carrying its current age
+   */
+  public LSA aged(LSA lsa) {
+    Long installed = installedAt.get(lsa.linkStateID);
+    if (installed == null)
+      return lsa;
+    long elapsed = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - installed);
+    if (elapsed == 0)
+      return lsa;
+    return lsa.withAge((int) Math.min(0xFFFF, lsa.age + elapsed));
+  }
+
+  private void publish() {
+    snapshot.set(new Snapshot(version, Collections.unmodifiableMap(new HashMap<IPv4, LSA>(_store))));
+  }
+
+  /**
+   * Marks the shortest-path tree for repair after the LSA of a router changed
+   * @param linkStateID router whose LSA was added, changed or removed
+   */
+  private void updateSPF(IPv4 linkStateID) {
+    if (spf != null)
+      spfDirty.add(linkStateID);
+  }
+
+  /**
+   * Repairs the shortest-path tree for every router marked since the last repair, from its current LSA
+   */
+  private void repairSPF() {
+    for (IPv4 linkStateID : spfDirty) {
+      LSA lsa = _store.get(linkStateID);
+      spf.update(linkStateID, lsa == null ? null : lsa.links);
+    }
+    spfDirty.clear();
+  }
+
+  /**
+   * Builds the table of the repaired tree from the last one, or from the whole tree the first time
+   */
+  private RoutingTable nextSPFTable() {
+    Set<IPv4> affected = spf.drainAffected();
+    if (spfTable == null)
+      return new RoutingTable(version, rd.getSimulatedIPAddress(), spf.getDistances(), spf.getPredecessors());
+
+    HashMap<IPv4, Integer> distance = new HashMap<IPv4, Integer>();
+    HashMap<IPv4, List<IPv4>> predecessors = new HashMap<IPv4, List<IPv4>>();
+    for (IPv4 vertex : affected) {
+      int d = spf.getDistance(vertex);
+      if (d == Integer.MAX_VALUE)
+        continue; // unreachable now, only dropped from the table
+      distance.put(vertex, d);
+      List<IPv4> previous = spf.getPredecessors(vertex);
+      if (!previous.isEmpty())
+        predecessors.put(vertex, previous);
+    }
+    return spfTable.update(version, affected, distance, predecessors);
+  }
+
+  public long getVersion() {
+    return snapshot.get().getVersion();
+  }
+
   //initialize the linkstate database by adding an entry about the router itself
   private LSA initLinkStateDatabase() {
-    LSA lsa = new LSA();
-    lsa.linkStateID = rd.getSimulatedIPAddress();
-    lsa.lsaSeqNumber = Integer.MIN_VALUE;
     LinkDescription ld = new LinkDescription.LinkDescriptionBuilder()
             .linkID(rd.getSimulatedIPAddress())
             .portNum(-1)
             .tosMetrics(0)
             .build();
-    lsa.links.add(ld);
-    return lsa;
+    return new LSA(rd.getSimulatedIPAddress(), Integer.MIN_VALUE, false, Collections.singletonList(ld));
+  }
+
+  /**
+   * Stores an LSA instance. With aging on, an instance of another router that reached MaxAge
+   * flushes that router's LSA instead.
+   * @param linkID router the LSA describes
+   * @param instance new instance
+   */
+  public synchronized void addToStore(IPv4 linkID, LSA instance) {
+    if (applyReceived(linkID, instance))
+      commit();
+  }
+
+  /**
+   * Stores the LSAs of one received packet that are newer than the instance held, as one new version.
+   * Checking and storing under the writer lock keeps the sequence numbers held from going backwards
+   * when several packets about the same router are handled at once.
+   * The store is copied once for the whole packet instead of once per LSA.
+   * Stored instances are recorded as flooded, the caller forwards them.
+   * @param instances received instances, applied in order
+   * @return instances stored or flushed, the ones to flood on
+   */
+  public synchronized List<LSA> addAllToStore(Collection<LSA> instances) {
+    List<LSA> installed = new ArrayList<LSA>(instances.size());
+    for (LSA instance : instances) {
+      LSA held = _store.get(instance.linkStateID);
+      if (held != null && held.lsaSeqNumber >= instance.lsaSeqNumber)
+        continue;
+      if (applyReceived(instance.linkStateID, instance)) {
+        _flooded.put(instance.linkStateID, instance.lsaSeqNumber);
+        installed.add(instance);
+      }
+    }
+    if (!installed.isEmpty())
+      commit();
+    return installed;
+  }
+
+  /**
+   * Applies a received instance without publishing, flushing it if it reached MaxAge
+   * @return true if the store changed
+   */
+  private boolean applyReceived(IPv4 linkID, LSA instance) {
+    if (maxAge > 0 && instance.age >= maxAge && !linkID.equals(rd.getSimulatedIPAddress()))
+      return apply(linkID, null) != null;
+    apply(linkID, instance);
+    return true;
   }
 
-  public synchronized void addToStore(String linkID, LSA instance) {
-    _store.put(linkID,instance);
+  public Collection<LSA> getAllLSA() {
+    return snapshot.get().getAll();
   }
 
-  public synchronized Collection<LSA> getAllLSA() {
-    return _store.values();
+  public LSA getFromStore(IPv4 linkstateID) {
+    return snapshot.get().get(linkstateID);
   }
 
-  public synchronized LSA getFromStore(String linkstateID) {
-    return _store.get(linkstateID);
+  /**
+   * Returns the header of every LSA held, for a Database Description
+   * @return headers of the database
+   */
+  public Vector<LSAHeader> getHeaders() {
+    Collection<LSA> lsas = snapshot.get().getAll();
+    Vector<LSAHeader> headers = new Vector<LSAHeader>(lsas.size());
+    for (LSA lsa : lsas)
+      headers.add(new LSAHeader(lsa));
+    return headers;
   }
 
-  public synchronized void removeLinkFromStore(String targetID, LinkDescription toBeRemoved) throws DatabaseException {
+  /**
+   * Returns every LSA with its current age, for a full flood
+   * @return aged LSAs
+   */
+  public Vector<LSA> getAgedLSA() {
+    Collection<LSA> lsas = snapshot.get().getAll();
+    Vector<LSA> aged = new Vector<LSA>(lsas.size());
+    for (LSA lsa : lsas)
+      aged.add(aged(lsa));
+    return aged;
+  }
+
+  /**
+   * Returns the LSAs whose sequence number changed since they were last flooded, with their current age,
+   * and records them as flooded
+   * @return changed LSAs
+   */
+  public synchronized Vector<LSA> getChangedLSA() {
+    Vector<LSA> changed = new Vector<LSA>();
+    for (LSA lsa : _store.values()) {
+      Integer flooded = _flooded.get(lsa.linkStateID);
+      if (flooded == null || flooded != lsa.lsaSeqNumber) {
+        changed.add(aged(lsa));
+        _flooded.put(lsa.linkStateID, lsa.lsaSeqNumber);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Records an LSA as flooded, e.g. after forwarding it on reception
+   * @param lsa flooded instance
+   */
+  public synchronized void markFlooded(LSA lsa) {
+    _flooded.put(lsa.linkStateID, lsa.lsaSeqNumber);
+  }
+
+  /**
+   * Adds a link to the LSA of a router, replacing an equal one, and increments its sequence number
+   * @param targetID router whose LSA changes
+   * @param toBeAdded link to add
+   * @throws DatabaseException no LSA for the router
+   */
+  public synchronized void addLinkToStore(IPv4 targetID, LinkDescription toBeAdded) throws DatabaseException {
+    LSA lsa = _store.get(targetID);
+    if (Objects.isNull(lsa))
+      throw new DatabaseException("Target not found.");
+    update(targetID, lsa.withLink(toBeAdded));
+  }
+
+  public synchronized void removeLinkFromStore(IPv4 targetID, LinkDescription toBeRemoved) throws DatabaseException {
     LSA lsa = _store.get(targetID);
     if (Objects.isNull(lsa))
       throw new DatabaseException("Target not found.");
-    if (!(lsa.links.remove(toBeRemoved)))
+    if (!lsa.hasLink(toBeRemoved))
       throw new DatabaseException("Link description not found.");
-    lsa.lsaSeqNumber++;
+    update(targetID, lsa.withoutLink(toBeRemoved));
+  }
+
+  public synchronized boolean removeFromStore(IPv4 source) {
+    return update(source, null) != null;
   }
 
-  public synchronized boolean removeFromStore(String source) {
-    LSA toRemove = _store.remove(source);
-    return toRemove != null;
+  /**
+   * Originates a new instance of a router's LSA, same links with the next sequence number and age 0
+   * @param linkStateID router whose LSA is refreshed
+   */
+  public synchronized void refresh(IPv4 linkStateID) {
+    LSA lsa = _store.get(linkStateID);
+    if (lsa != null)
+      update(linkStateID, lsa.withSequenceNumber(lsa.lsaSeqNumber + 1));
+  }
+
+  /**
+   * Moves the sequence number of a router's LSA past every sequence number held,
+   * so that neighbors replace any instance they kept from before
+   * @param linkStateID router whose LSA is renumbered
+   */
+  public synchronized void advanceSequenceNumber(IPv4 linkStateID) {
+    LSA lsa = _store.get(linkStateID);
+    if (lsa == null)
+      return;
+    int maxSeq = Integer.MIN_VALUE;
+    for (LSA other : _store.values())
+      maxSeq = Math.max(maxSeq, other.lsaSeqNumber);
+    update(linkStateID, lsa.withSequenceNumber(maxSeq + 1));
   }
 
 
-  public synchronized String toString() {
+  public String toString() {
     StringBuilder sb = new StringBuilder();
-    for (LSA lsa: _store.values()) {
+    for (LSA lsa: snapshot.get().getAll()) {
       sb.append(lsa.linkStateID).append("(" + lsa.lsaSeqNumber + ")").append(":\t");
       for (LinkDescription ld : lsa.links) {
         sb.append(ld.getLinkID()).append(",").append(ld.getPortNum()).append(",").
@@ -2,40 +2,145 @@ package socs.network.node;
 
 import socs.network.message.LSA;
 import socs.network.message.LinkDescription;
+import socs.network.message.SOSPFPacket;
 import socs.network.runner.Broadcast;
 import socs.network.runner.Client;
 import socs.network.runner.Listener;
+import socs.network.runner.NioListener;
+import socs.network.runner.Channel;
+import socs.network.runner.RunnerExecutor;
+import socs.network.runner.SendResult;
 import socs.network.util.Configuration;
+import socs.network.util.IPv4;
 import socs.network.util.Utility;
+import socs.network.util.ds.HashedWheelTimer;
 import socs.network.util.error.*;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.Comparator;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
 
 public class Router {
 
-    private static final int MAX_PORTS = 4;
+    private static final int DEFAULT_PORTS = 4;
+    private static final short DEFAULT_TTL = 64; // hops a DATA packet may take
 
     private final LinkStateDatabase lsd;
     private final RouterDescription rd = new RouterDescription();
-    private final Link[] ports = new Link[MAX_PORTS]; // invariant : no duplicates. (careful a->b == b->a !!!)
-    private Listener server; // Server thread
+    private final Link[] ports; // invariant : no duplicates. (careful a->b == b->a !!!)
+    // guards ports: written under the write lock, copied under the read lock
+    private final ReentrantReadWriteLock portLock = new ReentrantReadWriteLock();
+    // indexes of the attached links, read without locking, updated with ports
+    private final ConcurrentHashMap<IPv4, Port> portsByNeighbor = new ConcurrentHashMap<>(); // neighbor's simulated IP => port
+    private final ConcurrentHashMap<Short, Port> portsByProcessPort = new ConcurrentHashMap<>(); // neighbor's process port => port
+    private Runnable server; // Server task
+    private final String transport; // "blocking" (task per connection) or "nio" (selector based)
+    private final int ioThreads;
+    private final ExecutorService executor; // runs every runner task
+    private final ExecutorService sendExecutor = RunnerExecutor.sends(); // runs the per-neighbor sends of a broadcast
+    private final ExecutorService connectionExecutor; // reads the connections of the blocking transport
+    private final int helloTimeout; // milliseconds a Hello exchange may take
+    private final int connectTimeout; // per neighbor deadlines, in milliseconds
+    private final int writeTimeout;
+    private final boolean deltaFlooding; // flood only changed LSAs instead of the whole database
+    private final Set<IPv4> missedDelta = ConcurrentHashMap.newKeySet(); // neighbors whose last delta flood failed
+    private final int spfThreads; // parallelism of the all-pairs report
+    private final SpfScheduler spfScheduler; // throttled route computation
+    private volatile ForwardingTable fib = ForwardingTable.EMPTY; // swapped after every route computation, read without locking
+    private final HashedWheelTimer timer; // LSA expiry and refresh
+    private final int lsaRefresh; // seconds between two originations of this router's LSA
+    private final LinkStateCheckpoint checkpoint; // null when warm restart is off
+    private final int checkpointInterval; // seconds
+    private final int restartGrace; // seconds the links restored from a checkpoint are kept without a Hello
+    private long checkpointVersion = -1; // database version last written
+    private final RouterStats stats = new RouterStats();
+    private final RouterEventLoop eventLoop; // null unless protocol events run on a single router thread
 
     public Router(Configuration config) {
 
-        rd.setSimulatedIPAddress( config.getString("socs.network.router.ip"));
+        rd.setSimulatedIPAddress(IPv4.parse(config.getString("socs.network.router.ip")));
         rd.setProcessIPAddress("127.0.0.1");
         rd.setProcessPortNumber((short) config.getInt("socs.network.router.port"));
         rd.setStatus(RouterStatus.DEFAULT);
 
-        lsd = new LinkStateDatabase(rd);
+        int portCount = config.getInt("socs.network.router.ports", DEFAULT_PORTS);
+        if (portCount <= 0 || portCount > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid port count " + portCount);
+        ports = new Link[portCount];
+
+        transport = config.getString("socs.network.router.transport", "blocking");
+        ioThreads = config.getInt("socs.network.router.ioThreads", 2);
+        String executorMode = config.getString("socs.network.router.executor", "cached");
+        executor = createExecutor(executorMode, config.getInt("socs.network.router.poolSize", 16));
+        connectionExecutor = executorMode.equals("pool") ? RunnerExecutor.connections() : executor;
+        connectTimeout = config.getInt("socs.network.router.connectTimeout", 1000);
+        writeTimeout = config.getInt("socs.network.router.writeTimeout", 1000);
+        helloTimeout = config.getInt("socs.network.router.helloTimeout", 5000);
+        deltaFlooding = config.getString("socs.network.router.flooding", "full").equals("delta");
+        spfThreads = config.getInt("socs.network.router.spfThreads", Runtime.getRuntime().availableProcessors());
+        String processing = config.getString("socs.network.router.processing", "concurrent");
+        if (processing.equals("eventloop"))
+            eventLoop = new RouterEventLoop("sospf-router", stats);
+        else if (processing.equals("concurrent"))
+            eventLoop = null;
+        else
+            throw new IllegalArgumentException("Unknown processing mode " + processing);
+
+        lsd = new LinkStateDatabase(rd, config.getString("socs.network.router.spf", "incremental").equals("incremental"));
+        spfScheduler = new SpfScheduler(lsd, stats,
+                config.getInt("socs.network.router.spfStartDelay", 50),
+                config.getInt("socs.network.router.spfHold", 200),
+                config.getInt("socs.network.router.spfMaxWait", 5000));
+        lsd.setChangeListener(spfScheduler::request);
+        spfScheduler.addListener(table -> fib = ForwardingTable.build(table, this::findLink));
+
+        int lsaMaxAge = config.getInt("socs.network.router.lsaMaxAge", 3600);
+        lsaRefresh = config.getInt("socs.network.router.lsaRefresh", 1800);
+        if (lsaRefresh <= 0 || lsaRefresh >= lsaMaxAge)
+            throw new IllegalArgumentException("LSA refresh interval must be positive and below the max age");
+        timer = new HashedWheelTimer("sospf-timer", 1, TimeUnit.SECONDS, 64);
+        lsd.startAging(timer, this::dispatch, lsaMaxAge, lsa -> {
+            stats.lsasExpired.incrementAndGet();
+            System.out.println("LSA of " + lsa.linkStateID + " reached max age, flushed.");
+        });
+        timer.schedule(this::refreshLSA, lsaRefresh, TimeUnit.SECONDS);
+
+        checkpointInterval = config.getInt("socs.network.router.checkpointInterval", 30);
+        restartGrace = config.getInt("socs.network.router.restartGrace", 60);
+        if (config.hasPath("socs.network.router.checkpoint")) {
+            checkpoint = new LinkStateCheckpoint(Paths.get(config.getString("socs.network.router.checkpoint")));
+            loadCheckpoint();
+            timer.schedule(this::scheduleCheckpoint, checkpointInterval, TimeUnit.SECONDS);
+        } else
+            checkpoint = null;
 
+    }
 
+    private static ExecutorService createExecutor(String mode, int poolSize) {
+        try {
+            return RunnerExecutor.create(mode, poolSize);
+        } catch (UnsupportedOperationException e) {
+            System.out.println(e.getMessage() + ", falling back to cached threads.");
+            return RunnerExecutor.create("cached", poolSize);
+        }
     }
 
 
@@ -43,11 +148,14 @@ public class Router {
 
         try {
             System.out.print("Initializing server thread ");
-            server = new Listener(rd.getProcessPortNumber(), this);
-            server.start();
+            if (transport.equals("nio"))
+                server = new NioListener(rd.getProcessPortNumber(), this, ioThreads);
+            else
+                server = new Listener(rd.getProcessPortNumber(), this);
+            new Thread(server, "sospf-listener").start(); // runs for good, kept off the executor so it never holds a pool thread
 
             System.out.println("Done.");
-            System.out.println("Listening on " + rd.getProcessIPAddress() + ":" + rd.getProcessPortNumber());
+            System.out.println("Listening on " + rd.getProcessIPAddress() + ":" + rd.getProcessPortNumber() + " (" + transport + ")");
             System.out.print("Simulated IP : " + rd.getSimulatedIPAddress());
             System.out.println();
             System.out.println("Startup complete.");
@@ -68,12 +176,26 @@ public class Router {
      * @param link link to be checked
      * @return true if link already exists
      */
-    public synchronized boolean linkExists(final Link link) {
+    public boolean linkExists(final Link link) {
+        Port port = portsByNeighbor.get(neighborOf(link));
+        return port != null && port.link.equals(link);
+    }
+
+    /**
+     * Link attached at a port slot
+     */
+    private static final class Port {
+        final int slot;
+        final Link link;
 
-        for (Link el : ports) {
-            if (el !=null && el.equals(link)) return true;
+        Port(int slot, Link link) {
+            this.slot = slot;
+            this.link = link;
         }
-        return false;
+    }
+
+    private IPv4 neighborOf(Link link) {
+        return link.getOtherEnd(getSimulatedIp()).getSimulatedIPAddress();
     }
 
 
@@ -83,37 +205,44 @@ public class Router {
      * @return port of the link
      * @throws LinkNotAvailable if link doesn't exist
      */
-    public synchronized int getLinkId(Link link) throws LinkNotAvailable {
+    public int getLinkId(Link link) throws LinkNotAvailable {
         if (link == null)
             throw new IllegalArgumentException();
-        for (int i = 0; i < MAX_PORTS; i++) {
-            if (ports[i] != null && ports[i].equals(link))
-                return i;
-        }
-
-        throw new LinkNotAvailable();
+        Port port = portsByNeighbor.get(neighborOf(link));
+        if (port == null || !port.link.equals(link))
+            throw new LinkNotAvailable();
+        return port.slot;
     }
 
 
     /**
-     * Adds link to the ports array
+     * Adds link to the ports array, at most one link per neighbor
      *
      * @param link Link to be added
      * Can throw NoPortAvailableException if port array is full
      */
-    public synchronized void addLink(final Link link) throws DuplicatedLink, RouterPortsFull {
+    public void addLink(final Link link) throws DuplicatedLink, RouterPortsFull {
 
         if (link == null)
             throw new IllegalArgumentException();
 
-        if (linkExists(link))
-            throw new DuplicatedLink();
-
-        for (int i = 0; i < MAX_PORTS; i++) {
-            if (ports[i] == null) {
-                ports[i] = link;
-                return;
+        IPv4 neighbor = neighborOf(link);
+        portLock.writeLock().lock();
+        try {
+            if (portsByNeighbor.containsKey(neighbor))
+                throw new DuplicatedLink();
+
+            for (int i = 0; i < ports.length; i++) {
+                if (ports[i] == null) {
+                    Port port = new Port(i, link);
+                    ports[i] = link;
+                    portsByNeighbor.put(neighbor, port);
+                    portsByProcessPort.put(link.getOtherEnd(getSimulatedIp()).getProcessPortNumber(), port);
+                    return;
+                }
             }
+        } finally {
+            portLock.writeLock().unlock();
         }
 
         throw new RouterPortsFull();
@@ -123,12 +252,10 @@ public class Router {
 
     /**
      * Updates LS database with link
-     * Sequence number is incremented
+     * Sequence number is incremented, under the lock of the database
      * @param link to be added to LSD
      */
-    public synchronized void updateLSD(final Link link) {
-        LSA lsa = lsd.getFromStore(rd.getSimulatedIPAddress()); // getting my lsa
-        assert (lsa != null);
+    public void updateLSD(final Link link) {
         try {
             LinkDescription linkDescription = new LinkDescription.LinkDescriptionBuilder()
                     .linkID(link.getOtherEnd(getSimulatedIp()).getSimulatedIPAddress())
@@ -136,16 +263,12 @@ public class Router {
                     .tosMetrics(link.getWeight())
                     .build();
 
-            if (lsa.links.contains(linkDescription))
-                    lsa.links.remove(linkDescription);
-
-
-            lsa.links.add(linkDescription);
-            lsa.lsaSeqNumber++;
-            lsd.addToStore(getSimulatedIp(), lsa);
+            lsd.addLinkToStore(getSimulatedIp(), linkDescription);
 
         } catch (LinkNotAvailable e) {
             System.out.println("Invalid state exception. Add link before updating LSB");
+        } catch (DatabaseException e) {
+            System.out.println(e.getMessage());
         }
     }
 
@@ -154,14 +277,17 @@ public class Router {
      * @param link to be deleted
      * @return true if deleted successfully
      */
-    public synchronized boolean removeLink(Link link) {
-        for (int i = 0; i < 4; i++) {
-            if (ports[i] != null && ports[i].equals(link)) {
-                ports[i] = null;
-                return true;
-            }
+    public boolean removeLink(Link link) {
+        portLock.writeLock().lock();
+        try {
+            Port port = portsByNeighbor.get(neighborOf(link));
+            if (port == null || !port.link.equals(link))
+                return false;
+            detach(port);
+            return true;
+        } finally {
+            portLock.writeLock().unlock();
         }
-        return false;
     }
 
     /**
@@ -171,7 +297,7 @@ public class Router {
      *
      * @param destinationIP the ip adderss of the destination simulated router
      */
-    private void processDetect(String destinationIP) {
+    private void processDetect(IPv4 destinationIP) {
         try {
 
             System.out.println(lsd.getShortestPath(destinationIP));
@@ -180,6 +306,58 @@ public class Router {
         }
     }
 
+    /**
+     * output the cost to the destination and every equal-cost next hop
+     *
+     * @param destinationIP the ip address of the destination simulated router
+     */
+    private void processRoute(IPv4 destinationIP) {
+        RoutingTable.Route route = lsd.getRoutingTable().getRoute(destinationIP);
+        if (route == null)
+            System.out.println("No path available from " + rd.getSimulatedIPAddress() + " to " + destinationIP);
+        else
+            System.out.println(destinationIP + " cost " + route.cost + " via " + route.nextHops);
+    }
+
+    /**
+     * output the shortest path between every pair of routers known to the database
+     * <p/>
+     * format: source ip address -> ip address -> ... -> destination ip (cost)
+     */
+    private void processPaths() {
+        ForkJoinPool pool = new ForkJoinPool(spfThreads);
+        try {
+            lsd.getAllShortestPaths(pool, (source, destination, cost, path) -> {
+                if (path == null)
+                    System.out.println("No path available from " + source + " to " + destination);
+                else
+                    System.out.println(path.stream().map(IPv4::toString).collect(Collectors.joining("->")) + " (" + cost + ")");
+            });
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * send a DATA packet to the given destination, forwarded hop by hop along the forwarding tables
+     *
+     * @param destinationIP the ip address of the destination simulated router
+     * @param payload text carried by the packet
+     */
+    private void processSend(IPv4 destinationIP, String payload) {
+        SOSPFPacket packet = new SOSPFPacket.Builder()
+                .DATA()
+                .srcIP(getSimulatedIp())
+                .dstIP(destinationIP)
+                .srcProccessIP(getRealIp())
+                .srcProcessPort(getPort())
+                .routerID(getSimulatedIp())
+                .ttl(DEFAULT_TTL)
+                .payload(payload.getBytes(StandardCharsets.UTF_8))
+                .build();
+        forward(packet);
+    }
+
     /**
      * disconnect with the router identified by the given destination ip address
      * Notice: this command should trigger the synchronization of database
@@ -201,12 +379,7 @@ public class Router {
             lsd.removeLinkFromStore(getSimulatedIp(), linkDescription);
             lsd.removeFromStore(link.getOtherEnd(getSimulatedIp()).getSimulatedIPAddress());
 
-            Vector<LSA> lsas = new Vector(lsd.getAllLSA());
-            getLsd().removeFromStore(link.getOtherEnd(getSimulatedIp()).getSimulatedIPAddress());
-
-            Broadcast broadcast = new Broadcast(getTwoWayLinks(), lsas, this);
-            broadcast.start();
-            broadcast.join();
+            flood(new Vector<Link>(), true);
 
             removeLink(link);
 
@@ -218,7 +391,6 @@ public class Router {
         catch (DatabaseException e) {
             System.out.println(e.getMessage());
         }
-        catch (InterruptedException e) {}
 
 
     }
@@ -231,15 +403,14 @@ public class Router {
      * NOTE: this command should not trigger link database synchronization
      */
     // TODO fix this function
-    private synchronized Link processAttach(String processIP, short processPort, String simulatedIP, short weight) {
+    private Link processAttach(String processIP, short processPort, IPv4 simulatedIP, short weight) {
 
         // args check
         if (processIP == null
                 || simulatedIP == null
                 || processPort < 0
                 || weight < 0
-                || !Utility.validateIP(processIP)
-                || !Utility.validateIP(simulatedIP)) {
+                || !Utility.validateIP(processIP)) {
 
             throw new IllegalArgumentException("Invalid argument");
         }
@@ -273,50 +444,329 @@ public class Router {
 
     /**
      * broadcast Hello to neighbors asynchronously
-     * A thread is started for each link
-     * Thread is interrupted if the connection is fully established (TWO_WAY) or if an exception occurred
-     * Socket is not kept alive.
+     * A task is submitted to the executor for each link
+     * Task ends if the connection is fully established (TWO_WAY) or if an exception occurred
+     * Hello goes through the persistent channel of the link, which is kept alive for later floods.
      */
     private void processStart() {
 
-        LinkedList<Client> clients = new LinkedList<Client>();
+        Vector<Link> started = new Vector<>();
 
         // init Hello exchange
-        for (Link link : ports) {
+        for (Link link : getPorts()) {
             if (link != null && link.getOtherEnd(getSimulatedIp()).getStatus() != RouterStatus.TWO_WAY) {
-                Client client = new Client(this, link);
-                clients.add(client);
-                client.start();
+                started.add(link);
                 updateLSD(link);
             }
         }
 
-        int maxSeq = lsd.getAllLSA().stream().max(Comparator.comparingInt((a) -> a.lsaSeqNumber)).get().lsaSeqNumber;
-        lsd.getFromStore(getSimulatedIp()).lsaSeqNumber = maxSeq+1;
+        lsd.advanceSequenceNumber(getSimulatedIp());
         // broadcast LS updates to neighbors
+        helloThen(started, () -> flood(started, false));
+
+
+    }
+
+    /**
+     * Runs the Hello exchange of each link on the executor, then the next step once every exchange ended.
+     * Without the event loop the caller waits for the exchanges. With it the next step is queued as a new event
+     * instead: a Client queues its own status change, so the loop must not wait for it.
+     * @param links links to exchange Hello on
+     * @param next step run after the exchanges
+     */
+    private void helloThen(List<Link> links, Runnable next) {
+        ArrayList<CompletableFuture<Void>> clients = new ArrayList<>(links.size());
+        for (Link link : links)
+            clients.add(CompletableFuture.runAsync(new Client(this, link), executor));
+
+        if (eventLoop == null) {
+            for (int i = 0; i < links.size(); i++)
+                await(links.get(i), clients.get(i));
+            next.run();
+        } else
+            CompletableFuture.allOf(clients.toArray(new CompletableFuture<?>[0]))
+                    .whenComplete((result, failure) -> eventLoop.execute(next));
+    }
+
+    /**
+     * Runs a change of the protocol state: queued on the event loop when it is on, otherwise run by the caller
+     * @param event change to run
+     */
+    public void dispatch(Runnable event) {
+        if (eventLoop == null)
+            event.run();
+        else
+            eventLoop.execute(event);
+    }
+
+
+    /**
+     * Floods the database to TWO_WAY neighbors after a local change.
+     * In delta mode only the LSAs whose sequence number changed since they were last flooded are sent,
+     * and neighbors that failed to receive an earlier delta get the whole database instead.
+     * Neighbors that just reached TWO_WAY get a Database Description instead and request what they miss.
+     * @param newNeighbors links whose Hello exchange just completed
+     * @param wait true to flood from the calling thread
+     */
+    public void flood(Vector<Link> newNeighbors, boolean wait) {
+        Vector<Link> links = getTwoWayLinks();
+
+        Vector<Link> synced = new Vector<>();
+        for (Link link : links) {
+            if (newNeighbors.contains(link))
+                synced.add(link);
+        }
+        links.removeAll(synced);
+        for (Link link : synced) {
+            missedDelta.remove(link.getOtherEnd(getSimulatedIp()).getSimulatedIPAddress());
+            executor.execute(() -> sendDatabaseDescription(link));
+        }
+
+        if (!deltaFlooding) {
+            broadcast(links, lsd.getAgedLSA(), wait);
+            return;
+        }
+
+        Vector<Link> missed = new Vector<>();
+        for (Link link : links) {
+            if (missedDelta.contains(link.getOtherEnd(getSimulatedIp()).getSimulatedIPAddress()))
+                missed.add(link);
+        }
+        links.removeAll(missed);
+        Vector<LSA> lsas = lsd.getChangedLSA();
+        if (!missed.isEmpty())
+            broadcast(missed, lsd.getAgedLSA(), wait);
+        if (!lsas.isEmpty())
+            broadcast(links, lsas, wait);
+    }
+
+    private void broadcast(Vector<Link> links, Vector<LSA> lsas, boolean wait) {
+        Broadcast broadcast = new Broadcast(links, lsas, this);
+        if (wait)
+            broadcast.run();
+        else
+            executor.execute(broadcast);
+    }
+
+    /**
+     * Sends the headers of the whole database to a neighbor that just reached TWO_WAY
+     * @param link link to the neighbor
+     */
+    private void sendDatabaseDescription(Link link) {
+        RouterDescription neighbor = link.getOtherEnd(getSimulatedIp());
+        SOSPFPacket dbd = new SOSPFPacket.Builder()
+                .DBD()
+                .srcIP(getSimulatedIp())
+                .dstIP(neighbor.getSimulatedIPAddress())
+                .srcProcessPort(getPort())
+                .srcProccessIP(getRealIp())
+                .routerID(getSimulatedIp())
+                .neighborID(getSimulatedIp())
+                .lsaHeaders(lsd.getHeaders())
+                .build();
+        send(link, dbd);
+    }
+
+    /**
+     * Sends a single packet to a neighbor over its channel
+     * @param link link to the neighbor
+     * @param packet packet to send
+     * @return true if sent
+     */
+    public boolean send(Link link, SOSPFPacket packet) {
         try {
+            getChannel(link).send(packet);
+            return true;
+        } catch (IOException e) {
+            link.closeChannel();
+            System.out.println("Failed to send to " + link.getOtherEnd(getSimulatedIp()).getSimulatedIPAddress() + ".");
+            return false;
+        }
+    }
+
+    /**
+     * Originates a new instance of this router's LSA and floods it, so that other routers do not age it out
+     */
+    private void refreshLSA() {
+        (eventLoop == null ? executor : eventLoop).execute(() -> {
+            lsd.refresh(getSimulatedIp());
+            flood(new Vector<Link>(), false);
+        });
+        timer.schedule(this::refreshLSA, lsaRefresh, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Loads the database saved by a previous run, links of this router included, so routes are known before
+     * neighbors are reached again. Restored links not attached again within the restart grace period are withdrawn.
+     */
+    private void loadCheckpoint() {
+        if (!checkpoint.exists())
+            return;
+        try {
+            int loaded = lsd.restore(checkpoint.read());
+            System.out.println("Loaded " + loaded + " LSAs from checkpoint.");
+            timer.schedule(() -> dispatch(this::withdrawUnattachedLinks), restartGrace, TimeUnit.SECONDS);
+        } catch (IOException e) {
+            System.out.println("Failed to load checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Withdraws the links of this router's LSA whose neighbor is not attached, i.e. restored from a checkpoint
+     * and not attached again since, then floods the change
+     */
+    private void withdrawUnattachedLinks() {
+        boolean withdrawn = false;
+        for (LinkDescription ld : lsd.getFromStore(getSimulatedIp()).links) {
+            if (ld.getLinkID().equals(getSimulatedIp()) || findLink(ld.getLinkID()) != null)
+                continue;
+            try {
+                lsd.removeLinkFromStore(getSimulatedIp(), ld);
+                withdrawn = true;
+                System.out.println("Withdrew link to " + ld.getLinkID() + ", not attached again since restart.");
+            } catch (DatabaseException e) {
+                // removed meanwhile
+            }
+        }
+        if (withdrawn)
+            flood(new Vector<Link>(), false);
+    }
 
-            for (Client client : clients)
-                client.join();
+    private void scheduleCheckpoint() {
+        executor.execute(this::writeCheckpoint);
+        timer.schedule(this::scheduleCheckpoint, checkpointInterval, TimeUnit.SECONDS);
+    }
 
-            Vector<LSA> lsas = new Vector<LSA>(lsd.getAllLSA());
+    /**
+     * Saves the database if it changed since the last checkpoint
+     */
+    private void writeCheckpoint() {
+        if (checkpoint == null)
+            return;
+        synchronized (checkpoint) {
+            long version = lsd.getVersion();
+            if (version == checkpointVersion)
+                return;
+            try {
+                checkpoint.write(lsd.getAgedLSA());
+                checkpointVersion = version;
+            } catch (IOException e) {
+                System.out.println("Failed to write checkpoint: " + e.getMessage());
+            }
+        }
+    }
 
-            Broadcast broadcast = new Broadcast(getTwoWayLinks(), lsas, this);
-            broadcast.start();
+    /**
+     * Delivers a DATA packet addressed to this router, or forwards it to the next hop towards its destination
+     * @param packet DATA packet
+     */
+    public void forward(SOSPFPacket packet) {
+        if (getSimulatedIp().equals(packet.dstIP)) {
+            stats.dataDelivered.incrementAndGet();
+            String payload = packet.payload == null ? "" : new String(packet.payload, StandardCharsets.UTF_8);
+            System.out.println("Received data from " + packet.srcIP + " : " + payload);
+            return;
+        }
 
-        } catch (InterruptedException e) {}
+        if (packet.ttl <= 1) {
+            stats.dataDropped.incrementAndGet();
+            System.out.println("Dropped data from " + packet.srcIP + " to " + packet.dstIP + ". TTL expired.");
+            return;
+        }
 
+        Link link = fib.lookup(packet.dstIP, Objects.hash(packet.srcIP, packet.dstIP));
+        if (link == null) {
+            stats.dataDropped.incrementAndGet();
+            System.out.println("Dropped data from " + packet.srcIP + " to " + packet.dstIP + ". No route.");
+            return;
+        }
 
+        packet.ttl--;
+        if (send(link, packet))
+            stats.dataForwarded.incrementAndGet();
+        else
+            stats.dataDropped.incrementAndGet();
     }
 
+    /**
+     * Returns the link to a neighbor
+     * @param simulatedIP neighbor's simulated IP
+     * @return link, null if the router has no link to it
+     */
+    private Link findLink(IPv4 simulatedIP) {
+        try {
+            return getLink(simulatedIP);
+        } catch (LinkNotAvailable e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the persistent channel to the other end of a link
+     * @param link link to a neighbor
+     * @return channel to the neighbor
+     */
+    public Channel getChannel(Link link) {
+        return link.getChannel(getSimulatedIp(), connectTimeout);
+    }
+
+    /**
+     * Called by Broadcast with the outcome of the flood to each neighbor
+     * @param link link the LSUPDATE was sent on
+     * @param result outcome of the send
+     */
+    public void reportFloodResult(Link link, SendResult result) {
+        RouterDescription neighbor = link.getOtherEnd(getSimulatedIp());
+        if (deltaFlooding) {
+            // the delta is already marked flooded, so the next flood sends this neighbor everything
+            if (result == SendResult.OK)
+                missedDelta.remove(neighbor.getSimulatedIPAddress());
+            else
+                missedDelta.add(neighbor.getSimulatedIPAddress());
+        }
+        switch (result) {
+            case OK:
+                break;
+            case REFUSED:
+                System.out.println("Failed to send LSUPDATE to " + neighbor.getSimulatedIPAddress() + ". Host down.");
+                break;
+            case TIMEOUT:
+                System.out.println("Failed to send LSUPDATE to " + neighbor.getSimulatedIPAddress() + ". Timed out.");
+                break;
+            case FAILED:
+                link.closeChannel(); // next flood starts on a fresh connection
+                System.out.println("Failed to send LSUPDATE to " + neighbor.getSimulatedIPAddress() + ".");
+                break;
+        }
+    }
+
+    /**
+     * Waits for the Hello exchange of a link, at most the Hello timeout.
+     * A neighbor that does not answer in time has its channel closed, which ends the exchange.
+     * @param link link the exchange runs on
+     * @param task exchange to wait for
+     */
+    private void await(Link link, Future<?> task) {
+        try {
+            task.get(helloTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            link.closeChannel();
+            System.out.println("Hello to " + link.getOtherEnd(getSimulatedIp()).getSimulatedIPAddress() + " timed out.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("Task failed. Stacktrace: ");
+            e.getCause().printStackTrace();
+        }
+    }
 
     /**
      * Find all TWO_WAY links
      * @return all TWO_WAY links
      */
-    private synchronized Vector<Link> getTwoWayLinks() {
+    private Vector<Link> getTwoWayLinks() {
         Vector<Link> vector = new Vector();
-        for (Link link : ports) {
+        for (Link link : getPorts()) {
             if (link != null && link.getOtherEnd(getSimulatedIp()).getStatus() == RouterStatus.TWO_WAY)
                 vector.add(link);
         }
@@ -330,24 +780,24 @@ public class Router {
      * @return Link that corresponds to proccessPort
      * @throws LinkNotAvailable
      */
-    public synchronized Link getLink(short processPort) throws LinkNotAvailable {
-        for (Link link : ports) {
-            if (link != null) {
-                if (link.getOtherEnd(getSimulatedIp()).getProcessPortNumber() == processPort)
-                    return link;
-            }
-        }
-        throw new LinkNotAvailable();
+    public Link getLink(short processPort) throws LinkNotAvailable {
+        Port port = portsByProcessPort.get(processPort);
+        if (port == null)
+            throw new LinkNotAvailable();
+        return port.link;
     }
 
-    public synchronized Link getLink(String destinationIP) throws LinkNotAvailable {
-        for (Link link : ports) {
-            if (link != null) {
-                if (link.getOtherEnd(getSimulatedIp()).getSimulatedIPAddress().equals(destinationIP))
-                    return link;
-            }
-        }
-        throw new LinkNotAvailable();
+    /**
+     * Find a link by the simulated IP of the neighbor
+     * @param destinationIP neighbor's simulated IP
+     * @return link to the neighbor
+     * @throws LinkNotAvailable
+     */
+    public Link getLink(IPv4 destinationIP) throws LinkNotAvailable {
+        Port port = portsByNeighbor.get(destinationIP);
+        if (port == null)
+            throw new LinkNotAvailable();
+        return port.link;
     }
 
 
@@ -360,26 +810,21 @@ public class Router {
      */
     //TODO test this.
     private void processConnect(String processIP, short processPort,
-                                String simulatedIP, short weight) {
+                                IPv4 simulatedIP, short weight) {
         Link link = processAttach(processIP, processPort, simulatedIP, weight); // attach to router
 
         // initiate connection to router
         if (link != null && link.getOtherEnd(getSimulatedIp()).getStatus() != RouterStatus.TWO_WAY) {
-            Client client = new Client(this, link);
-            client.start();
             updateLSD(link);
 
-            try {
-                client.join();
-            } catch (InterruptedException e) {}
+            Vector<Link> started = new Vector<>();
+            started.add(link);
+            helloThen(started, () -> {
+                lsd.advanceSequenceNumber(getSimulatedIp());
 
-            int maxSeq = lsd.getAllLSA().stream().max(Comparator.comparingInt((a) -> a.lsaSeqNumber)).get().lsaSeqNumber;
-            lsd.getFromStore(getSimulatedIp()).lsaSeqNumber = maxSeq+1;
-
-            // database sync
-            Vector<LSA> lsas = new Vector<LSA>(lsd.getAllLSA());
-            Broadcast broadcast = new Broadcast(getTwoWayLinks(), lsas, this);
-            broadcast.start();
+                // database sync
+                flood(started, false);
+            });
         }
 
     }
@@ -388,22 +833,42 @@ public class Router {
      * Outputs the neighbors of the routers
      */
     private void processNeighbors() {
-        for (Link link : ports) {
+        for (Link link : getPorts()) {
             if (!Objects.isNull(link) && link.getOtherEnd(getSimulatedIp()).getStatus() == RouterStatus.TWO_WAY)
                 System.out.println(link.getOtherEnd(getSimulatedIp()).getSimulatedIPAddress());
         }
 
     }
 
+    /**
+     * Compares the incremental shortest-path tree with a full SPF
+     */
+    private void processSPFCheck() {
+        if (!lsd.isIncrementalSPF()) {
+            System.out.println("Incremental SPF disabled, every table is a full SPF.");
+            return;
+        }
+        LinkedList<IPv4> mismatches = lsd.verifySPF();
+        if (mismatches.isEmpty())
+            System.out.println("Incremental SPF matches full SPF.");
+        else
+            System.out.println("Incremental SPF differs from full SPF for " + mismatches);
+    }
+
     /**
      * Disconnects with all neighbors and quit the program
      */
     private void processQuit() {
-        for (Link link : ports) {
+        writeCheckpoint(); // before the disconnects remove the neighbors
+        for (Link link : getPorts()) {
             if (link != null) {
                 processDisconnect(link.getOtherEnd(this.getSimulatedIp()).getProcessPortNumber());
             }
         }
+        spfScheduler.shutdown(); // no route computation for a router going down
+        timer.stop(); // no refresh, expiry or checkpoint either
+        if (eventLoop != null)
+            eventLoop.stop(); // events queued behind the quit are dropped
         System.exit(0);
 
     }
@@ -419,40 +884,10 @@ public class Router {
             System.out.print(">> ");
             String command = br.readLine();
             while (true) {
-                if (command.startsWith("detect ")) {
-                    String[] cmdLine = command.split(" ");
-                    processDetect(cmdLine[1]);
-                } else if (command.startsWith("disconnect ")) {
-                    String[] cmdLine = command.split(" ");
-                    processDisconnect(Short.parseShort(cmdLine[1]));
-                } else if (command.startsWith("quit")) {
-                    processQuit();
-                } else if (command.startsWith("attach ")) {
-                    String[] cmdLine = command.split(" ");
-                    processAttach(cmdLine[1], Short.parseShort(cmdLine[2]),
-                            cmdLine[3], Short.parseShort(cmdLine[4]));
-                } else if (command.equals("start")) {
-                    processStart();
-                } else if (command.startsWith("connect ")) {
-                    String[] cmdLine = command.split(" ");
-                    processConnect(cmdLine[1], Short.parseShort(cmdLine[2]),
-                            cmdLine[3], Short.parseShort(cmdLine[4]));
-                } else if (command.equals("neighbors")) {
-                    //output neighbors
-                    processNeighbors();
-                } else if (command.equals("list")) { // debug
-                    printPorts();
-                }
-                else if (command.equals("lsd")) { // debug
-                  printLSD();
-                } else if (command.startsWith("UnsafeRemove ")) {
-                    String[] cmdLine = command.split(" ");
-                    removeLink(Integer.parseInt(cmdLine[1]));
-                }
-                else {
-                    System.out.println("Invalid command");
+                final String line = command;
+                boolean valid = eventLoop == null ? execute(line) : eventLoop.executeAndWait(() -> execute(line));
+                if (!valid)
                     break;
-                }
                 System.out.print(">> ");
                 command = br.readLine();
             }
@@ -464,13 +899,74 @@ public class Router {
         }
     }
 
+    /**
+     * Runs one terminal command, on the event loop when it is on
+     * @param command command line
+     * @return false if the command is unknown; a bad argument is reported and the terminal goes on
+     */
+    private boolean execute(String command) {
+        try {
+            if (command.startsWith("detect ")) {
+                String[] cmdLine = command.split(" ");
+                processDetect(IPv4.parse(cmdLine[1]));
+            } else if (command.startsWith("route ")) {
+                String[] cmdLine = command.split(" ");
+                processRoute(IPv4.parse(cmdLine[1]));
+            } else if (command.startsWith("send ")) {
+                String[] cmdLine = command.split(" ", 3);
+                processSend(IPv4.parse(cmdLine[1]), cmdLine.length > 2 ? cmdLine[2] : "");
+            } else if (command.equals("paths")) {
+                processPaths();
+            } else if (command.startsWith("disconnect ")) {
+                String[] cmdLine = command.split(" ");
+                processDisconnect(Short.parseShort(cmdLine[1]));
+            } else if (command.startsWith("quit")) {
+                processQuit();
+            } else if (command.startsWith("attach ")) {
+                String[] cmdLine = command.split(" ");
+                processAttach(cmdLine[1], Short.parseShort(cmdLine[2]),
+                        IPv4.parse(cmdLine[3]), Short.parseShort(cmdLine[4]));
+            } else if (command.equals("start")) {
+                processStart();
+            } else if (command.startsWith("connect ")) {
+                String[] cmdLine = command.split(" ");
+                processConnect(cmdLine[1], Short.parseShort(cmdLine[2]),
+                        IPv4.parse(cmdLine[3]), Short.parseShort(cmdLine[4]));
+            } else if (command.equals("neighbors")) {
+                //output neighbors
+                processNeighbors();
+            } else if (command.equals("list")) { // debug
+                printPorts();
+            }
+            else if (command.equals("lsd")) { // debug
+              printLSD();
+            } else if (command.equals("stats")) {
+                System.out.print(stats);
+            } else if (command.equals("spfcheck")) { // debug
+                processSPFCheck();
+            } else if (command.startsWith("UnsafeRemove ")) {
+                String[] cmdLine = command.split(" ");
+                removeLink(Integer.parseInt(cmdLine[1]));
+            }
+            else {
+                System.out.println("Invalid command");
+                return false;
+            }
+        } catch (IllegalArgumentException e) { // also NumberFormatException
+            System.out.println("Invalid argument: " + e.getMessage());
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.out.println("Missing argument");
+        }
+        return true;
+    }
+
     /**
      * Prints all links
      */
-    private synchronized void printPorts() {
+    private void printPorts() {
         int i = 0;
         System.out.println();
-        for (Link link : ports) {
+        for (Link link : getPorts()) {
             if (link == null)
                 continue;
             System.out.println("Link " + i);
@@ -486,13 +982,30 @@ public class Router {
      * Network can end up in a bad state.
      * @param i index of link to be removed
      */
-    private synchronized void removeLink(int i) {
-        if (i >= 4 || i < 0)
+    private void removeLink(int i) {
+        if (i >= ports.length || i < 0)
             throw new IllegalArgumentException("Invalid index");
-        ports[i] =null;
+        portLock.writeLock().lock();
+        try {
+            if (ports[i] != null)
+                detach(portsByNeighbor.get(neighborOf(ports[i])));
+        } finally {
+            portLock.writeLock().unlock();
+        }
 
     }
 
+    /**
+     * Frees the slot of a port, removes it from the indexes and closes its channel.
+     * Called with the write lock of the ports held
+     */
+    private void detach(Port port) {
+        portsByNeighbor.remove(neighborOf(port.link), port);
+        portsByProcessPort.remove(port.link.getOtherEnd(getSimulatedIp()).getProcessPortNumber(), port);
+        ports[port.slot] = null;
+        port.link.closeChannel();
+    }
+
 
     public RouterDescription getRd() {
         return rd;
@@ -506,7 +1019,7 @@ public class Router {
         return rd.getProcessPortNumber();
     }
 
-    public String getSimulatedIp() {
+    public IPv4 getSimulatedIp() {
         return rd.getSimulatedIPAddress();
     }
 
@@ -514,11 +1027,53 @@ public class Router {
         return lsd;
     }
 
-    public synchronized Link[] getPorts() {
-        return ports;
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return executor the connections of the blocking transport are read on
+     */
+    public ExecutorService getConnectionExecutor() {
+        return connectionExecutor;
+    }
+
+    public ExecutorService getSendExecutor() {
+        return sendExecutor;
+    }
+
+    public RouterStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return event loop running the protocol events, null when they run on the threads that receive them
+     */
+    public RouterEventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    /**
+     * @return copy of the ports array, null for a free slot
+     */
+    public Link[] getPorts() {
+        portLock.readLock().lock();
+        try {
+            return ports.clone();
+        } finally {
+            portLock.readLock().unlock();
+        }
     }
 
-    public synchronized void printLSD() {
+    public void printLSD() {
         System.out.println();
         System.out.println(lsd.toString());
         System.out.println();
@@ -1,5 +1,6 @@
 package socs.network.node;
 
+import socs.network.util.IPv4;
 import socs.network.util.Utility;
 
 
@@ -9,7 +10,7 @@ public class RouterDescription {
   private String processIPAddress;
   private short processPortNumber;
   //used to identify the router in the simulated network space
-  private String simulatedIPAddress;
+  private IPv4 simulatedIPAddress;
   //status of the router
   private RouterStatus status;
 
@@ -47,7 +48,7 @@ public class RouterDescription {
     return processPortNumber;
   }
 
-  public String getSimulatedIPAddress() {
+  public IPv4 getSimulatedIPAddress() {
     return simulatedIPAddress;
   }
 
@@ -73,10 +74,10 @@ public class RouterDescription {
     this.processPortNumber = processPortNumber;
   }
 
-  public void setSimulatedIPAddress(String simulatedIPAddress) {
+  public void setSimulatedIPAddress(IPv4 simulatedIPAddress) {
 
-    if (simulatedIPAddress == null || !Utility.validateIP(simulatedIPAddress))
-      throw new IllegalArgumentException("Invalid argument");
+    if (simulatedIPAddress == null)
+      throw new IllegalArgumentException("Argument is null");
 
     this.simulatedIPAddress = simulatedIPAddress;
   }
@@ -95,7 +96,7 @@ public class RouterDescription {
     private String processIPAddress;
     private short processPortNumber;
     //used to identify the router in the simulated network space
-    private  String simulatedIPAddress;
+    private IPv4 simulatedIPAddress;
     //status of the router
     private RouterStatus status;
 
@@ -110,7 +111,7 @@ public class RouterDescription {
       return this;
     }
 
-    public RouterDescriptionBuilder simulatedIPAddress(String simulatedIPAddress) {
+    public RouterDescriptionBuilder simulatedIPAddress(IPv4 simulatedIPAddress) {
       this.simulatedIPAddress = simulatedIPAddress;
       return this;
     }
@@ -0,0 +1,97 @@
+package socs.network.node;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Single router thread owning the protocol state.
+ *
+ * Received packets, timer expirations and operator commands are queued as events by the I/O, timer and terminal
+ * threads (many producers) and run one at a time, in arrival order, by the loop thread (single consumer).
+ * Sockets are accepted and read on the I/O threads. An event may write to a socket or wait for a task of the
+ * router executor, but never waits for another event, since that one would only run after it.
+ */
+public class RouterEventLoop implements Executor {
+
+    private final ConcurrentLinkedQueue<Runnable> events = new ConcurrentLinkedQueue<>();
+    private final RouterStats stats;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public RouterEventLoop(String name, RouterStats stats) {
+        this.stats = stats;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues an event, run after every event queued before it
+     * @param event event to run on the loop thread
+     */
+    @Override
+    public void execute(Runnable event) {
+        if (!running)
+            throw new RejectedExecutionException("Event loop stopped");
+        events.add(event);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Queues an event and waits for its result, runs it directly when called from the loop thread
+     * @param event event to run on the loop thread
+     * @return result of the event
+     * @throws InterruptedException interrupted while waiting
+     * @throws RuntimeException thrown by the event
+     */
+    public <T> T executeAndWait(Supplier<T> event) throws InterruptedException {
+        if (inEventLoop())
+            return event.get();
+        FutureTask<T> task = new FutureTask<>(event::get);
+        execute(task);
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Stops the loop once the current event ran, queued events are dropped
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        while (running) {
+            Runnable event = events.poll();
+            if (event == null) {
+                LockSupport.park(this); // execute unparks, a permit given before parking is not lost
+                continue;
+            }
+            try {
+                event.run();
+            } catch (RuntimeException e) {
+                System.out.print("Event failed. Stacktrace: ");
+                e.printStackTrace();
+            }
+            stats.eventsProcessed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package socs.network.node;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the router, printed by the stats command.
+ * Updated from every handler thread, hence atomics.
+ */
+public class RouterStats {
+
+    // reception
+    public final AtomicLong updatesReceived = new AtomicLong();
+    public final AtomicLong lsasAccepted = new AtomicLong();
+    public final AtomicLong lsasDropped = new AtomicLong(); // not newer than the stored instance
+    public final AtomicLong lsasExpired = new AtomicLong(); // reached MaxAge without being refreshed
+
+    // flooding
+    public final AtomicLong updatesSent = new AtomicLong();
+    public final AtomicLong lsasFlooded = new AtomicLong();
+    public final AtomicLong bytesFlooded = new AtomicLong();
+
+    // data plane
+    public final AtomicLong dataForwarded = new AtomicLong(); // sent to a next hop, originated or transit
+    public final AtomicLong dataDelivered = new AtomicLong();
+    public final AtomicLong dataDropped = new AtomicLong(); // no route, TTL expired or send failure
+
+    // route computation
+    public final AtomicLong spfRequested = new AtomicLong(); // changes of the link state database
+    public final AtomicLong spfExecuted = new AtomicLong(); // runs after throttling
+
+    // event loop
+    public final AtomicLong eventsProcessed = new AtomicLong(); // run by the router thread, 0 without the event loop
+
+    /**
+     * Records one LSUPDATE successfully sent to a neighbor
+     * @param lsaCount number of LSAs carried
+     * @param bytes size of the frame on the wire
+     */
+    public void recordUpdateSent(int lsaCount, int bytes) {
+        updatesSent.incrementAndGet();
+        lsasFlooded.addAndGet(lsaCount);
+        bytesFlooded.addAndGet(bytes);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("LSUPDATEs received:\t").append(updatesReceived.get()).append("\n");
+        sb.append("LSAs accepted:\t").append(lsasAccepted.get()).append("\n");
+        sb.append("LSAs dropped (stale):\t").append(lsasDropped.get()).append("\n");
+        sb.append("LSAs expired:\t").append(lsasExpired.get()).append("\n");
+        sb.append("LSUPDATEs sent:\t").append(updatesSent.get()).append("\n");
+        sb.append("LSAs flooded:\t").append(lsasFlooded.get()).append("\n");
+        sb.append("bytes flooded:\t").append(bytesFlooded.get()).append("\n");
+        sb.append("DATA forwarded:\t").append(dataForwarded.get()).append("\n");
+        sb.append("DATA delivered:\t").append(dataDelivered.get()).append("\n");
+        sb.append("DATA dropped:\t").append(dataDropped.get()).append("\n");
+        sb.append("SPF runs requested:\t").append(spfRequested.get()).append("\n");
+        sb.append("SPF runs executed:\t").append(spfExecuted.get()).append("\n");
+        sb.append("events processed:\t").append(eventsProcessed.get()).append("\n");
+        long accepted = lsasAccepted.get();
+        if (accepted > 0) // LSAs sent per LSA learned
+            sb.append("amplification:\t").append(String.format("%.2f", (double) lsasFlooded.get() / accepted)).append("\n");
+        return sb.toString();
+    }
+}
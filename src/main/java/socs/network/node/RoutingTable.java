@@ -0,0 +1,212 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.util.IPv4;
+import socs.network.util.ds.CompactDijkstra;
+import socs.network.util.ds.CompactGraph;
+import socs.network.util.ds.Edge;
+import socs.network.util.ds.RouterIdTable;
+import socs.network.util.ds.Vertex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shortest-path tree from one router, captured for a version of the link state database.
+ * Next hops, cost and previous hop are stored per destination; paths are read back from the tree on lookup.
+ * Every destination keeps the set of neighbors starting an equal-cost path to it (ECMP).
+ * A table can be derived from the previous one by recomputing only the destinations whose tree changed.
+ */
+public class RoutingTable {
+
+  public static class Route {
+    public final IPv4 destination;
+    public final Set<IPv4> nextHops; // every equal-cost neighbor to forward to, the destination itself for a neighbor
+    public final IPv4 previousHop; // last router before the destination, null for the source
+    public final int cost;
+
+    Route(IPv4 destination, Set<IPv4> nextHops, IPv4 previousHop, int cost) {
+      this.destination = destination;
+      this.nextHops = Collections.unmodifiableSet(nextHops);
+      this.previousHop = previousHop;
+      this.cost = cost;
+    }
+  }
+
+  private final long version;
+  private final IPv4 source;
+  private final HashMap<IPv4, Route> routes;
+  private final HashMap<IPv4, Integer> depth; // hops to the source along the parents
+
+  /**
+   * Builds the table from a shortest-path DAG
+   * @param version database version the tree was computed for
+   * @param sourceIP root of the tree
+   * @param distance distance of every reachable router
+   * @param predecessors equal-cost previous hops of every reachable router but the source,
+   *                     the first one being its parent in the shortest-path tree
+   */
+  public RoutingTable(long version, IPv4 sourceIP, Map<IPv4, Integer> distance, Map<IPv4, List<IPv4>> predecessors) {
+    this.version = version;
+    this.source = sourceIP;
+    this.routes = new HashMap<IPv4, Route>();
+    this.depth = new HashMap<IPv4, Integer>();
+    install(distance, predecessors);
+  }
+
+  private RoutingTable(long version, RoutingTable previous) {
+    this.version = version;
+    this.source = previous.source;
+    this.routes = new HashMap<IPv4, Route>(previous.routes);
+    this.depth = new HashMap<IPv4, Integer>(previous.depth);
+  }
+
+  /**
+   * Derives the table of a newer version, recomputing only the routes of the affected destinations.
+   * Every destination below an affected one in the shortest-path DAG must be affected too.
+   * @param version database version the tree was repaired for
+   * @param affected destinations whose distance or previous hops may have changed, reachable or not
+   * @param distance distance of every reachable affected destination
+   * @param predecessors equal-cost previous hops of every reachable affected destination but the source,
+   *                     the first one being its parent in the shortest-path tree
+   * @return new table, this one is left unchanged
+   */
+  public RoutingTable update(long version, Collection<IPv4> affected, Map<IPv4, Integer> distance,
+                             Map<IPv4, List<IPv4>> predecessors) {
+    RoutingTable table = new RoutingTable(version, this);
+    for (IPv4 destination : affected) {
+      table.routes.remove(destination);
+      table.depth.remove(destination);
+    }
+    table.install(distance, predecessors);
+    return table;
+  }
+
+  /**
+   * Computes the routes of the given destinations, whose previous hops are either given too or already routed
+   */
+  private void install(Map<IPv4, Integer> distance, Map<IPv4, List<IPv4>> predecessors) {
+    // a predecessor is closer, or as close through a zero cost link and then higher in the tree
+    for (IPv4 destination : distance.keySet())
+      depthOf(destination, predecessors);
+    ArrayList<IPv4> order = new ArrayList<IPv4>(distance.keySet());
+    order.sort(Comparator.comparingInt((IPv4 v) -> distance.get(v)).thenComparingInt(depth::get));
+
+    for (IPv4 destination : order) {
+      List<IPv4> previous = predecessors.get(destination);
+      LinkedHashSet<IPv4> nextHops = new LinkedHashSet<IPv4>();
+      if (previous == null || previous.isEmpty()) {
+        nextHops.add(destination); // source
+      } else {
+        for (IPv4 hop : previous) {
+          if (hop.equals(source))
+            nextHops.add(destination);
+          else if (routes.containsKey(hop)) // only missing for zero cost cycles
+            nextHops.addAll(routes.get(hop).nextHops);
+        }
+      }
+      IPv4 parent = previous == null || previous.isEmpty() ? null : previous.get(0);
+      routes.put(destination, new Route(destination, nextHops, parent, distance.get(destination)));
+    }
+  }
+
+  /**
+   * Computes the number of hops to the source along the parents
+   */
+  private int depthOf(IPv4 destination, Map<IPv4, List<IPv4>> predecessors) {
+    LinkedList<IPv4> pending = new LinkedList<IPv4>();
+    IPv4 vertex = destination;
+    while (vertex != null && !depth.containsKey(vertex)) {
+      pending.addFirst(vertex);
+      List<IPv4> previous = predecessors.get(vertex);
+      vertex = previous == null || previous.isEmpty() ? null : previous.get(0);
+    }
+    int d = vertex == null ? -1 : depth.get(vertex);
+    for (IPv4 id : pending)
+      depth.put(id, ++d);
+    return depth.get(destination);
+  }
+
+  /**
+   * Full SPF over the given LSAs
+   * @param version database version of the LSAs
+   * @param sourceIP root of the tree
+   * @param lsas every LSA of the database
+   * @return routing table
+   */
+  public static RoutingTable compute(long version, IPv4 sourceIP, Collection<LSA> lsas) {
+    CompactGraph graph = new CompactGraph(lsas);
+    RouterIdTable ids = graph.getIds();
+    HashMap<IPv4, Integer> distance = new HashMap<IPv4, Integer>();
+    HashMap<IPv4, List<IPv4>> predecessors = new HashMap<IPv4, List<IPv4>>();
+
+    int source = ids.getId(sourceIP);
+    if (source < 0) { // no LSA mentions this router yet
+      distance.put(sourceIP, 0);
+      return new RoutingTable(version, sourceIP, distance, predecessors);
+    }
+
+    CompactDijkstra spf = new CompactDijkstra(graph);
+    spf.start(source);
+    for (int i = 0; i < spf.getSettledCount(); i++) {
+      int vertex = spf.getSettled(i);
+      distance.put(ids.getName(vertex), spf.getDistance(vertex));
+      int[] previous = spf.getPredecessors(vertex);
+      if (previous.length > 0) {
+        ArrayList<IPv4> names = new ArrayList<IPv4>(previous.length);
+        for (int hop : previous)
+          names.add(ids.getName(hop));
+        predecessors.put(ids.getName(vertex), names);
+      }
+    }
+    return new RoutingTable(version, sourceIP, distance, predecessors);
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns the route to a destination
+   * @param destinationIP destination router
+   * @return route, null if unreachable
+   */
+  public Route getRoute(IPv4 destinationIP) {
+    return routes.get(destinationIP);
+  }
+
+  /**
+   * Returns the path to a destination as a list of edges
+   * @param destinationIP destination router
+   * @return path, null if unreachable
+   */
+  public LinkedList<Edge> getPath(IPv4 destinationIP) {
+    Route route = routes.get(destinationIP);
+    if (route == null)
+      return null;
+
+    LinkedList<Edge> path = new LinkedList<Edge>();
+    if (route.previousHop == null) {
+      path.add(new Edge(new Vertex(source), new Vertex(source), 0));
+      return path;
+    }
+    while (route.previousHop != null) {
+      Route previous = routes.get(route.previousHop);
+      path.addFirst(new Edge(new Vertex(previous.destination), new Vertex(route.destination), route.cost - previous.cost));
+      route = previous;
+    }
+    return path;
+  }
+
+  public Collection<Route> getRoutes() {
+    return routes.values();
+  }
+}
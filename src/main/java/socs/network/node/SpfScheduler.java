@@ -0,0 +1,97 @@
+package socs.network.node;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Throttles route computations triggered by link state database changes.
+ *
+ * The first change after a quiet period runs the SPF after the start delay. Changes arriving while a run is
+ * pending join it. A change following a run waits until the hold interval since that run has elapsed, and the
+ * hold interval doubles after every run up to the maximum wait. Once no change came for twice the maximum wait,
+ * the hold interval drops back to its initial value.
+ * A run does all the route work: with the incremental SPF on, the tree is repaired there too, not on every change.
+ */
+public class SpfScheduler {
+
+    private final LinkStateDatabase lsd;
+    private final RouterStats stats;
+    private final long startDelay; // milliseconds
+    private final long hold;
+    private final long maxWait;
+
+    private final ScheduledExecutorService timer;
+    private final List<Consumer<RoutingTable>> listeners = new CopyOnWriteArrayList<>();
+
+    private boolean pending = false;
+    private long lastRun = Long.MIN_VALUE / 2; // nanoTime of the last run
+    private long currentHold;
+
+    public SpfScheduler(LinkStateDatabase lsd, RouterStats stats, long startDelay, long hold, long maxWait) {
+        if (startDelay < 0 || hold < 0 || maxWait < hold)
+            throw new IllegalArgumentException("Invalid SPF timers " + startDelay + "/" + hold + "/" + maxWait);
+        this.lsd = lsd;
+        this.stats = stats;
+        this.startDelay = startDelay;
+        this.hold = hold;
+        this.maxWait = maxWait;
+        this.currentHold = hold;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sospf-spf");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers a listener called with the routing table after every run, on the scheduler thread
+     * @param listener listener
+     */
+    public void addListener(Consumer<RoutingTable> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Requests a route computation, called on every change of the link state database
+     */
+    public synchronized void request() {
+        stats.spfRequested.incrementAndGet();
+        if (pending)
+            return;
+        pending = true;
+
+        long now = System.nanoTime();
+        long sinceLastRun = TimeUnit.NANOSECONDS.toMillis(now - lastRun);
+        long delay;
+        if (sinceLastRun > 2 * maxWait) { // quiet period, back to the initial timers
+            currentHold = hold;
+            delay = startDelay;
+        } else {
+            delay = Math.max(startDelay, currentHold - sinceLastRun);
+        }
+        timer.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        synchronized (this) {
+            pending = false;
+            lastRun = System.nanoTime();
+            currentHold = Math.min(currentHold * 2, maxWait);
+        }
+        stats.spfExecuted.incrementAndGet();
+        RoutingTable table = lsd.getRoutingTable();
+        for (Consumer<RoutingTable> listener : listeners)
+            listener.accept(table);
+    }
+
+    /**
+     * Cancels the pending run, if any
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+}
@@ -1,32 +1,39 @@
 package socs.network.runner;
 
 import socs.network.message.LSA;
+import socs.network.message.PacketCodec;
 import socs.network.message.SOSPFPacket;
 import socs.network.node.Link;
 import socs.network.node.Router;
 import socs.network.node.RouterDescription;
 
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.net.ConnectException;
-import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Created by ericschaal on 2017-02-28.
+ * Floods LSAs to every given link in parallel.
+ * Each neighbor gets its own send task bounded by the connect and write deadlines of the owner,
+ * so a slow or dead neighbor does not hold up the others. Every outcome is reported back to the owner.
+ * Sends run on the send executor of the owner, never on the runner executor a broadcast itself may run on,
+ * so waiting for them cannot starve a bounded pool.
  */
-public class Broadcast extends Thread {
+public class Broadcast implements Runnable {
 
     private final Vector<Link> links;
     private final Vector<LSA> lsas;
     private final Router owner;
-    private Socket client;
-
-    private ObjectOutputStream out;
 
 
     public Broadcast(Vector<Link> links, Vector<LSA> lsas, Router owner) {
-        super();
         this.links = links;
         this.lsas = lsas;
         this.owner = owner;
@@ -34,38 +41,68 @@ public class Broadcast extends Thread {
 
     @Override
     public void run() {
-        super.run();
-
-
-        for (Link link : links) {
-
-            try {
 
+        List<Future<SendResult>> sends = new ArrayList<>(links.size());
+        for (Link link : links)
+            sends.add(owner.getSendExecutor().submit(() -> send(link)));
 
-                RouterDescription destination = link.getOtherEnd(owner.getSimulatedIp());
-                client = new Socket(destination.getProcessIPAddress(), destination.getProcessPortNumber());
-                out = new ObjectOutputStream(client.getOutputStream());
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(owner.getConnectTimeout() + owner.getWriteTimeout());
 
-                SOSPFPacket sospfPacket = new SOSPFPacket.Builder()
-                        .LSUPDATE()
-                        .srcIP(owner.getSimulatedIp())
-                        .dstIP(destination.getSimulatedIPAddress())
-                        .srcProcessPort(owner.getPort())
-                        .srcProccessIP(owner.getRealIp())
-                        .routerID(owner.getSimulatedIp())
-                        .neighborID(owner.getSimulatedIp())
-                        .lsaArray(lsas)
-                        .build();
+        for (int i = 0; i < links.size(); i++) {
+            Link link = links.get(i);
+            Future<SendResult> send = sends.get(i);
+            SendResult result;
 
-                out.writeObject(sospfPacket);
+            try {
+                result = send.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                send.cancel(true);
+                link.closeChannel(); // unblocks a write stuck on a full socket buffer
+                result = SendResult.TIMEOUT;
+            } catch (ExecutionException e) {
+                result = SendResult.FAILED;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
 
+            owner.reportFloodResult(link, result);
+        }
+    }
 
-            } catch (IOException e) {
-                System.out.println("Failed to create socket.");
-                if (e instanceof ConnectException) {
-                    System.out.println(link.getOtherEnd(owner.getSimulatedIp()) + ". Host down.");
-                }
-            }
+    /**
+     * Sends the LSAs to one neighbor
+     * @param link link to the neighbor
+     * @return outcome of the send
+     */
+    private SendResult send(Link link) {
+        try {
+
+            RouterDescription destination = link.getOtherEnd(owner.getSimulatedIp());
+            Channel channel = owner.getChannel(link);
+
+            SOSPFPacket sospfPacket = new SOSPFPacket.Builder()
+                    .LSUPDATE()
+                    .srcIP(owner.getSimulatedIp())
+                    .dstIP(destination.getSimulatedIPAddress())
+                    .srcProcessPort(owner.getPort())
+                    .srcProccessIP(owner.getRealIp())
+                    .routerID(owner.getSimulatedIp())
+                    .neighborID(owner.getSimulatedIp())
+                    .lsaArray(lsas)
+                    .build();
+
+            channel.send(sospfPacket);
+            owner.getStats().recordUpdateSent(lsas.size(), PacketCodec.HEADER_LENGTH + PacketCodec.sizeOf(sospfPacket));
+            return SendResult.OK;
+
+        } catch (ConnectException e) {
+            return SendResult.REFUSED;
+        } catch (SocketTimeoutException e) {
+            return SendResult.TIMEOUT;
+        } catch (IOException e) {
+            return SendResult.FAILED;
         }
     }
 }
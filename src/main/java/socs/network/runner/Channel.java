@@ -0,0 +1,124 @@
+package socs.network.runner;
+
+import socs.network.message.PacketCodec;
+import socs.network.message.SOSPFPacket;
+import socs.network.node.RouterDescription;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Long-lived connection to the listener of a neighbor.
+ * One channel is kept per link and carries both Hello and LSUPDATE traffic.
+ * The socket is opened lazily and re-opened once if a write fails, until the channel is closed.
+ */
+public class Channel {
+
+    private final RouterDescription destination;
+    private final int connectTimeout; // milliseconds, 0 waits for the OS timeout
+
+    private final Object writeLock = new Object();
+    private final Object readLock = new Object();
+
+    private volatile Socket socket;
+    private volatile boolean closed; // set for good by close, a closed channel never reconnects
+    private DataOutputStream out;
+    private DataInputStream in;
+
+    public Channel(RouterDescription destination, int connectTimeout) {
+        this.destination = destination;
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Opens socket and IO streams
+     * @throws IOException IO stream error
+     */
+    private synchronized void open() throws IOException {
+        if (closed)
+            throw new IOException("Channel closed");
+        if (socket != null)
+            return;
+        Socket s = new Socket();
+        try {
+            s.connect(new InetSocketAddress(destination.getProcessIPAddress(), destination.getProcessPortNumber()), connectTimeout);
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        socket = s;
+    }
+
+    /**
+     * Sends a packet, reconnecting once if the connection was lost
+     * @param packet packet to be sent
+     * @throws IOException if the neighbor can't be reached
+     */
+    public void send(SOSPFPacket packet) throws IOException {
+        synchronized (writeLock) {
+            try {
+                write(packet);
+            } catch (IOException e) {
+                if (closed)
+                    throw e;
+                disconnect();
+                write(packet);
+            }
+        }
+    }
+
+    private void write(SOSPFPacket packet) throws IOException {
+        PacketCodec.writeFrame(output(), packet);
+    }
+
+    /**
+     * Block until packet received
+     * @return received packet
+     * @throws IOException IO stream error or malformed frame
+     */
+    public SOSPFPacket receive() throws IOException {
+        synchronized (readLock) {
+            return PacketCodec.readFrame(input());
+        }
+    }
+
+    private synchronized DataOutputStream output() throws IOException {
+        open();
+        return out;
+    }
+
+    private synchronized DataInputStream input() throws IOException {
+        open();
+        return in;
+    }
+
+    /**
+     * Closes the connection for good. A send blocked on it fails and does not reconnect,
+     * the link opens a new channel on next use.
+     */
+    public void close() {
+        closed = true;
+        disconnect();
+    }
+
+    /**
+     * Drops the connection, next send reconnects
+     */
+    private synchronized void disconnect() {
+        if (socket == null)
+            return;
+        try {
+            socket.close();
+        } catch (IOException e) {}
+        socket = null;
+        out = null;
+        in = null;
+    }
+}
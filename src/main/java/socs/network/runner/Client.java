@@ -10,43 +10,26 @@ import socs.network.util.Utility;
 import socs.network.util.error.UnexpectedSOSFPacket;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
 
 /**
  * Created by ericschaal on 2017-02-28.
  */
-public class Client extends Thread {
+public class Client implements Runnable {
 
     private final Router owner;
     private final Link link;
     private final RouterDescription destination;
-
-    private Socket client;
-    private ObjectInputStream in;
-    private ObjectOutputStream out;
+    private final Channel channel;
 
 
     public Client(Router owner, Link link) {
-        super();
         this.owner = owner;
         this.link = link;
         this.destination = link.getOtherEnd(owner.getSimulatedIp());
+        this.channel = owner.getChannel(link);
 
     }
 
-
-    /**
-     * Opens socket and IO streams
-     * @throws IOException IO stream error
-     */
-    private void init() throws IOException {
-        this.client = new Socket(destination.getProcessIPAddress(), destination.getProcessPortNumber());
-        out = new ObjectOutputStream(client.getOutputStream());
-        in = new ObjectInputStream(client.getInputStream());
-    }
-
     /**
      * Sends Hello packet
      * @throws IOException
@@ -63,38 +46,36 @@ public class Client extends Thread {
                 .weight(link.getWeight())
                 .build();
 
-        out.writeObject(hello);
+        channel.send(hello);
     }
 
     /**
      * Block until packet received
      * @return received packet
      * @throws IOException IO stream error
-     * @throws ClassNotFoundException Serialization error
      */
-    private SOSPFPacket receiveSOSFPacket() throws IOException, ClassNotFoundException {
-        return (SOSPFPacket) in.readObject();
+    private SOSPFPacket receiveSOSFPacket() throws IOException {
+        return channel.receive();
     }
 
     /**
-     * Sets link as Two Way
+     * Sets link as Two Way, through the router event loop when it is on
      */
-    private void updateTwoWay() {
-        link.getOtherEnd(owner.getSimulatedIp()).setStatus(RouterStatus.TWO_WAY);
+    private void updateTwoWay(SOSPFPacket rcv) {
+        owner.dispatch(() -> {
+            link.getOtherEnd(owner.getSimulatedIp()).setStatus(RouterStatus.TWO_WAY);
+            System.out.println("set " + rcv.srcIP + " to TWO_WAY");
+        });
     }
 
 
     @Override
     public void run() {
-        super.run();
         try {
 
             SOSPFPacket rcv;
 
-            init(); // create socket and open I/O streams
-
-
-            sendHello();
+            sendHello(); // channel connects on first use
 
             rcv = receiveSOSFPacket(); // blocking
 
@@ -103,20 +84,16 @@ public class Client extends Thread {
 
             System.out.println("received HELLO from " + rcv.srcIP);
 
-            updateTwoWay();
-
-            System.out.println("set " + rcv.srcIP + " to TWO_WAY");
+            updateTwoWay(rcv);
 
             sendHello();
 
 
 
         } catch (IOException e) {
+            link.closeChannel(); // next exchange starts on a fresh channel
             System.out.print("IO stream error. Stacktrace: ");
             e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            System.out.println("Serialization error. Stacktrace:");
-            e.printStackTrace();
         }
     }
 }
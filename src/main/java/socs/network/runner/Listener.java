@@ -9,14 +9,13 @@ import java.net.Socket;
 /**
  * Created by ericschaal on 2017-02-28.
  */
-public class Listener extends Thread {
+public class Listener implements Runnable {
 
     private final Router owner;
     private final short listeningPort;
     private final ServerSocket serverSocket;
 
     public Listener(short port, Router owner) throws IOException {
-        super();
         this.listeningPort = port;
         this.owner = owner;
         this.serverSocket = new ServerSocket(this.listeningPort);
@@ -25,15 +24,12 @@ public class Listener extends Thread {
 
     @Override
     public void run() {
-        super.run();
-
-        while (!interrupted()) {
+        while (!Thread.currentThread().isInterrupted()) {
 
             try {
 
                 Socket clientSocket = serverSocket.accept();
-                Server server = new Server(clientSocket, owner);
-                server.start();
+                owner.getConnectionExecutor().execute(new Server(clientSocket, owner));
 
 
             } catch (IOException e) {
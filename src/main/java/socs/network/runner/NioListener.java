@@ -0,0 +1,262 @@
+package socs.network.runner;
+
+import socs.network.message.PacketCodec;
+import socs.network.message.SOSPFPacket;
+import socs.network.node.Router;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking alternative to Listener.
+ * The listener thread only accepts connections and spreads them over a fixed set of I/O threads.
+ * I/O threads read frames, decode packets and hand them to a Server on the router executor,
+ * one packet at a time per connection.
+ */
+public class NioListener implements Runnable {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final Router owner;
+    private final ServerSocketChannel serverChannel;
+    private final IOLoop[] loops;
+
+    public NioListener(short port, Router owner, int ioThreads) throws IOException {
+        if (ioThreads < 1)
+            throw new IllegalArgumentException("At least one I/O thread is required");
+        this.owner = owner;
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.loops = new IOLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++)
+            loops[i] = new IOLoop(i);
+    }
+
+
+    @Override
+    public void run() {
+        for (IOLoop loop : loops)
+            loop.start();
+
+        int next = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+
+            try {
+
+                SocketChannel accepted = serverChannel.accept();
+                accepted.configureBlocking(false);
+                loops[next].register(accepted);
+                next = (next + 1) % loops.length;
+
+            } catch (ClosedByInterruptException e) {
+                break;
+            } catch (IOException e) {
+                System.out.println("Exception occurred on accept.");
+            }
+        }
+
+        try {
+            serverChannel.close();
+            for (IOLoop loop : loops)
+                loop.interrupt();
+            System.out.println("Listening thread stopped");
+        } catch (Exception e) {
+            System.out.println("Failed to stop listening thread");
+            System.exit(-1);
+        }
+    }
+
+
+    /**
+     * Selector loop owning a subset of the connections
+     */
+    private class IOLoop extends Thread {
+
+        private final Selector selector;
+        private final Queue<SocketChannel> toRegister = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection> toWrite = new ConcurrentLinkedQueue<>();
+
+        IOLoop(int id) throws IOException {
+            super("sospf-io-" + id);
+            setDaemon(true);
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            toRegister.add(channel);
+            selector.wakeup();
+        }
+
+        void requestWrite(Connection connection) {
+            toWrite.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (!interrupted()) {
+                try {
+
+                    selector.select();
+
+                    SocketChannel channel;
+                    while ((channel = toRegister.poll()) != null) {
+                        Connection connection = new Connection(channel, this);
+                        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    }
+
+                    Connection pending;
+                    while ((pending = toWrite.poll()) != null) {
+                        if (pending.key.isValid())
+                            pending.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable())
+                                connection.read();
+                            if (key.isValid() && key.isWritable())
+                                connection.flush();
+                        } catch (IOException e) {
+                            connection.close();
+                        }
+                    }
+
+                } catch (IOException e) {
+                    System.out.println("Exception occurred in I/O loop.");
+                }
+            }
+
+            try {
+                for (SelectionKey key : selector.keys())
+                    key.channel().close();
+                selector.close();
+            } catch (IOException e) {}
+        }
+    }
+
+
+    /**
+     * State of one accepted connection
+     */
+    private class Connection {
+
+        private final SocketChannel channel;
+        private final IOLoop loop;
+        private final Server server;
+        private SelectionKey key;
+
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+
+        private final Queue<SOSPFPacket> inbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        Connection(SocketChannel channel, IOLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+            this.server = new Server(owner, this::reply);
+        }
+
+        /**
+         * Reads what is available and extracts every complete frame
+         */
+        void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                close();
+                return;
+            }
+
+            readBuffer.flip();
+            int needed = 0;
+            while (readBuffer.remaining() >= PacketCodec.HEADER_LENGTH) {
+                int length = PacketCodec.checkLength(readBuffer.getInt(readBuffer.position()));
+                int frameLength = PacketCodec.HEADER_LENGTH + length;
+                if (readBuffer.remaining() < frameLength) {
+                    needed = frameLength;
+                    break;
+                }
+
+                ByteBuffer body = readBuffer.duplicate();
+                body.position(readBuffer.position() + PacketCodec.HEADER_LENGTH).limit(readBuffer.position() + frameLength);
+                inbox.add(PacketCodec.decode(body));
+                readBuffer.position(readBuffer.position() + frameLength);
+            }
+
+            if (needed > readBuffer.capacity()) { // frame does not fit, grow the buffer
+                ByteBuffer larger = ByteBuffer.allocate(needed);
+                larger.put(readBuffer);
+                readBuffer = larger;
+            } else
+                readBuffer.compact();
+
+            dispatch();
+        }
+
+        /**
+         * Hands queued packets to the router logic, keeping their order for this connection
+         */
+        private void dispatch() {
+            if (!inbox.isEmpty() && scheduled.compareAndSet(false, true))
+                owner.getExecutor().execute(this::drain);
+        }
+
+        private void drain() {
+            SOSPFPacket packet;
+            while ((packet = inbox.poll()) != null) {
+                try {
+                    server.handle(packet);
+                } catch (IOException e) {
+                    close();
+                }
+            }
+            scheduled.set(false);
+            dispatch(); // packets may have arrived after the last poll
+        }
+
+        void reply(SOSPFPacket packet) throws IOException {
+            if (!channel.isOpen())
+                throw new IOException("Connection closed");
+            writeQueue.add(PacketCodec.encodeFrame(packet));
+            loop.requestWrite(this);
+        }
+
+        /**
+         * Writes queued frames until the socket buffer is full
+         */
+        void flush() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = writeQueue.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining())
+                    return;
+                writeQueue.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            if (!writeQueue.isEmpty()) // reply queued while clearing the interest
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        void close() {
+            if (key != null)
+                key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {}
+        }
+    }
+}
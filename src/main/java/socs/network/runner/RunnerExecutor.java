@@ -0,0 +1,82 @@
+package socs.network.runner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the executor every runner task (server, client, broadcast) is submitted to.
+ * The listener keeps its own thread.
+ *
+ * Modes:
+ *   cached  - platform threads created on demand and reused once idle (default)
+ *   pool    - bounded pool of platform threads, extra tasks wait in queue
+ *   virtual - one virtual thread per task, requires a Java 21 runtime
+ *
+ * A bounded pool caps the number of concurrent tasks. The connections of the blocking transport are then
+ * read on threads of their own, see connections().
+ */
+public class RunnerExecutor {
+
+    private RunnerExecutor() {
+    }
+
+    public static ExecutorService create(String mode, int poolSize) {
+        switch (mode) {
+            case "cached":
+                return Executors.newCachedThreadPool();
+            case "pool":
+                if (poolSize < 1)
+                    throw new IllegalArgumentException("Pool size must be positive");
+                return Executors.newFixedThreadPool(poolSize);
+            case "virtual":
+                return virtualThreadPerTask();
+            default:
+                throw new IllegalArgumentException("Unknown executor mode " + mode);
+        }
+    }
+
+    /**
+     * Builds the executor the per-neighbor sends of a broadcast run on.
+     * Kept apart from the runner executor: a broadcast waits for its sends, and on a bounded pool
+     * the sends would queue behind the broadcast waiting for them.
+     * Each send is bounded by the connect and write deadlines, so threads do not pile up.
+     * @return cached pool of daemon threads
+     */
+    public static ExecutorService sends() {
+        return daemonThreads("sospf-send-");
+    }
+
+    /**
+     * Builds the executor the connections of the blocking transport are read on when the runner executor is a
+     * bounded pool. A connection is read for as long as the neighbor keeps it open, so on the pool every
+     * connection would hold a pool thread for good and leave none to the other tasks.
+     * @return cached pool of daemon threads, one per open connection
+     */
+    public static ExecutorService connections() {
+        return daemonThreads("sospf-conn-");
+    }
+
+    private static ExecutorService daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread thread = new Thread(task, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newCachedThreadPool(factory);
+    }
+
+    /**
+     * Looked up reflectively so the project still builds and runs on runtimes without virtual threads
+     * @return virtual thread per task executor
+     */
+    private static ExecutorService virtualThreadPerTask() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available on this runtime", e);
+        }
+    }
+}
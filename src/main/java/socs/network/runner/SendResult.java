@@ -0,0 +1,11 @@
+package socs.network.runner;
+
+/**
+ * Outcome of sending a packet to one neighbor
+ */
+public enum SendResult {
+    OK,
+    TIMEOUT, // connect or write deadline expired
+    REFUSED, // nobody listening on the other end
+    FAILED   // any other I/O error
+}
@@ -1,11 +1,13 @@
 package socs.network.runner;
 
 import socs.network.message.LSA;
+import socs.network.message.LSAHeader;
 import socs.network.message.LinkDescription;
 import socs.network.message.SOSPFPacket;
 import socs.network.node.Link;
 import socs.network.node.Router;
 import socs.network.node.RouterDescription;
+import socs.network.node.RouterEventLoop;
 import socs.network.node.RouterStatus;
 import socs.network.util.Utility;
 import socs.network.util.error.DatabaseException;
@@ -13,12 +15,18 @@ import socs.network.util.error.DuplicatedLink;
 import socs.network.util.error.LinkNotAvailable;
 import socs.network.util.error.RouterPortsFull;
 
+import socs.network.message.PacketCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.net.SocketException;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Vector;
 import java.util.stream.Collectors;
@@ -26,34 +34,50 @@ import java.util.stream.Collectors;
 /**
  * Created by ericschaal on 2017-02-28.
  * Handles received SOSPFPackets
+ * The connection is kept open and serves every packet the neighbor sends until it closes it.
+ * When run as a task it reads the accepted socket itself, otherwise packets are pushed through handle().
  */
-public class Server extends Thread {
+public class Server implements Runnable {
+
+    /**
+     * Sends a packet back on the connection the handled packet came from
+     */
+    public interface Reply {
+        void send(SOSPFPacket packet) throws IOException;
+    }
 
 
     private final Socket client;
     private final Router owner;
 
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    private Reply reply;
+    private DataInputStream in;
 
     private RouterDescription sender;
     private Link link;
     private SOSPFPacket rcv;
+    private boolean awaitingSecondHello; // first HELLO answered, waiting for the neighbor's confirmation
 
     public Server(Socket accepted, Router owner) {
-        super();
         this.client = accepted;
         this.owner = owner;
     }
 
+    public Server(Router owner, Reply reply) {
+        this.client = null;
+        this.owner = owner;
+        this.reply = reply;
+    }
+
 
     /**
      * Opens socket streams
      * @throws IOException
      */
     private void init() throws IOException {
-        out = new ObjectOutputStream(client.getOutputStream());
-        in = new ObjectInputStream(client.getInputStream());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+        reply = packet -> PacketCodec.writeFrame(out, packet);
     }
 
     /**
@@ -73,15 +97,18 @@ public class Server extends Thread {
                 .simulatedIPAddress(rcv.srcIP)
                 .build();
 
-        link = new Link(owner.getRd(), sender, rcv.weight);
+        try {
+
+            link = owner.getLink(rcv.srcIP); // attached on both ends, keeps the weight configured here
+            link.getOtherEnd(owner.getSimulatedIp()).setStatus(RouterStatus.INIT); // Setting to init
 
-        if (!owner.linkExists(link)) {
+        } catch (LinkNotAvailable e) {
 
+            link = new Link(owner.getRd(), sender, rcv.weight);
             owner.addLink(link);
             owner.updateLSD(link);
 
-        } else
-            link.getOtherEnd(owner.getSimulatedIp()).setStatus(RouterStatus.INIT); // Setting to init
+        }
 
         System.out.println("set " + rcv.srcIP + " to INIT"); // Print log
 
@@ -96,20 +123,15 @@ public class Server extends Thread {
                 .neighborID(owner.getSimulatedIp())
                 .build();
 
-        out.writeObject(packet); // sending packet
+        reply.send(packet); // sending packet
 
 
     }
 
     /**
      * Handles second Hello packet and initiate LSUpdate broadcast
-     * @throws ClassNotFoundException serialization error
-     * @throws IOException stream error
-     * @throws InterruptedException can't be interrupted
      */
-    private void handleSecondHello() throws ClassNotFoundException, IOException, InterruptedException {
-
-        rcv = (SOSPFPacket) in.readObject();
+    private void handleSecondHello() {
 
         System.out.println("received HELLO from " + rcv.srcIP); // Printing log
 
@@ -122,15 +144,9 @@ public class Server extends Thread {
 
 
 
-        Vector<Link> links = new Vector<>(Arrays.stream(owner.getPorts()) // get two_way links
-                .filter(el -> !Objects.isNull(el) && el.getOtherEnd(owner.getSimulatedIp()).getStatus() == RouterStatus.TWO_WAY)
-                .collect(Collectors.toSet()));
-        Vector<LSA> lsas = new Vector<>(owner.getLsd().getAllLSA());
-
-
-        Broadcast broadcast = new Broadcast(links, lsas, owner);
-        broadcast.start();
-        broadcast.join(); // wait before continuing
+        Vector<Link> newNeighbor = new Vector<>();
+        newNeighbor.add(link);
+        owner.flood(newNeighbor, true); // wait before continuing
 
     }
 
@@ -139,19 +155,75 @@ public class Server extends Thread {
 
     @Override
     public void run() {
-        super.run();
 
         try {
 
             init();
-            this.rcv = (SOSPFPacket) in.readObject();
 
+            while (true) {
+
+                SOSPFPacket packet;
+                try {
+                    packet = PacketCodec.readFrame(in);
+                } catch (EOFException | SocketException e) {
+                    break; // neighbor closed or reset its channel
+                } catch (IOException e) {
+                    System.out.println("Malformed packet, closing connection: " + e.getMessage());
+                    break;
+                }
+
+                handle(packet);
+            }
+
+
+        } catch (IOException e) {
+            System.out.print("Failed to open streams. Stacktrace: ");
+            e.printStackTrace();
+        } finally {
+            try {
+                client.close();
+            } catch (IOException e) {}
+        }
+
+
+    }
+
+    /**
+     * Handles one received packet, queued on the router event loop when it is on
+     * @param packet received packet
+     * @throws IOException failed to reply, only when handled by the calling thread
+     */
+    public void handle(SOSPFPacket packet) throws IOException {
+        RouterEventLoop eventLoop = owner.getEventLoop();
+        if (eventLoop == null) {
+            process(packet);
+            return;
+        }
+        eventLoop.execute(() -> {
+            try {
+                process(packet);
+            } catch (IOException e) {
+                System.out.println("Failed to reply to " + packet.srcIP + ".");
+            }
+        });
+    }
+
+    private void process(SOSPFPacket packet) throws IOException {
+
+        this.rcv = packet;
+
+        try {
 
             switch (Utility.getSOSPFPacketType(rcv)) {
                 case HELLO:
 
-                    handleFirstHello();
-                    handleSecondHello();
+                    if (awaitingSecondHello) {
+                        awaitingSecondHello = false;
+                        handleSecondHello();
+                    } else {
+                        handleFirstHello();
+                        awaitingSecondHello = true;
+                    }
                     break;
 
                 case LSUPDATE:
@@ -159,29 +231,93 @@ public class Server extends Thread {
                     handleLSUpdate();
                     break;
 
+                case DBD:
+
+                    handleDatabaseDescription();
+                    break;
+
+                case LSREQUEST:
+
+                    handleLSRequest();
+                    break;
+
+                case DATA:
+
+                    owner.forward(rcv);
+                    break;
+
                 case UNKNOWN:
                     System.out.println("Invalid packet type.");
                     break;
             }
 
-            client.close();
-
-
-        } catch (IOException e) {
-            System.out.print("Failed to open streams. Stacktrace: ");
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            System.out.println("Error while serializing. Stacktrace: ");
-            e.printStackTrace();
         } catch (RouterPortsFull e) {
             System.out.println("Error. Corrupted state. Stacktrace: ");
             e.printStackTrace();
         } catch (DuplicatedLink e) {
             System.out.println("Error. Corrupted state. Stacktrace: ");
             e.printStackTrace();
-        } catch (InterruptedException e) {}
+        }
+
+    }
+
+    /**
+     * Handles Database Description packet
+     * Requests the LSAs the neighbor holds that are missing here or newer than ours
+     */
+    private void handleDatabaseDescription() {
+
+        Vector<LSAHeader> wanted = new Vector<>();
+        for (LSAHeader header : rcv.lsaHeaders) {
+            LSA current = owner.getLsd().getFromStore(header.linkStateID);
+            if (current == null || current.lsaSeqNumber < header.lsaSeqNumber)
+                wanted.add(header);
+        }
 
+        if (wanted.isEmpty())
+            return;
 
+        try {
+            Link neighbor = owner.getLink(rcv.srcIP);
+            SOSPFPacket request = new SOSPFPacket.Builder()
+                    .LSREQUEST()
+                    .srcIP(owner.getSimulatedIp())
+                    .dstIP(rcv.srcIP)
+                    .srcProcessPort(owner.getPort())
+                    .srcProccessIP(owner.getRealIp())
+                    .routerID(owner.getSimulatedIp())
+                    .neighborID(owner.getSimulatedIp())
+                    .lsaHeaders(wanted)
+                    .build();
+            owner.send(neighbor, request);
+        } catch (LinkNotAvailable e) {
+            // neighbor detached meanwhile, nothing to request
+        }
+    }
+
+    /**
+     * Handles LS Request packet
+     * Answers with an LSUPDATE holding the requested LSAs
+     */
+    private void handleLSRequest() {
+
+        Vector<LSA> requested = new Vector<>();
+        for (LSAHeader header : rcv.lsaHeaders) {
+            LSA lsa = owner.getLsd().getFromStore(header.linkStateID);
+            if (lsa != null)
+                requested.add(owner.getLsd().aged(lsa));
+        }
+
+        if (requested.isEmpty())
+            return;
+
+        try {
+            Vector<Link> neighbor = new Vector<>();
+            neighbor.add(owner.getLink(rcv.srcIP));
+            new Broadcast(neighbor, requested, owner).run();
+        } catch (LinkNotAvailable e) {
+            // neighbor detached meanwhile, nothing to answer
+        }
     }
 
     /**
@@ -191,15 +327,20 @@ public class Server extends Thread {
 
 
         Vector<LSA> lsas = rcv.lsaArray;
-        boolean flag = false;
+        Vector<LSA> accepted = new Vector<>();
+        Vector<LSA> toStore = new Vector<>(); // stored together once the packet is checked, if still newer
+
+        owner.getStats().updatesReceived.incrementAndGet();
 
+        // check the whole packet first, then flood what was accepted once
         for (LSA lsa : lsas) {
+            boolean flag = false;
             if (owner.getLsd().getFromStore(lsa.linkStateID) == null
                     || (owner.getLsd().getFromStore(lsa.linkStateID).lsaSeqNumber < lsa.lsaSeqNumber)) { // no record from this router yet or higher sequence number
 
 
                 if (owner.getLsd().getFromStore(lsa.linkStateID) != null) {
-                    LinkedList<LinkDescription> removed = getRemoved(owner.getLsd().getFromStore(lsa.linkStateID).links, lsa.links);
+                    List<LinkDescription> removed = lsa.removedSince(owner.getLsd().getFromStore(lsa.linkStateID));
                     //System.out.println("Removed Size = " + removed.size());
                     if (removed.size() == 1) {
                         try {
@@ -213,10 +354,10 @@ public class Server extends Thread {
 
                                 owner.getLsd().removeLinkFromStore(owner.getSimulatedIp(), ld);
 
-                                 LSA newLsa = owner.getLsd().getFromStore(owner.getSimulatedIp());
-                                 newLsa.delete_ack = true;
+                                 LSA newLsa = owner.getLsd().getFromStore(owner.getSimulatedIp()).withDeleteAck(true);
                                  Vector<LSA> vLSA = new Vector<>();
                                  vLSA.add(newLsa);
+                                 owner.getLsd().markFlooded(newLsa);
                                 Vector<Link> vLink = new Vector(Arrays.stream(owner.getPorts())
                                         .filter( el -> {
                                             if (Objects.isNull(el))
@@ -227,14 +368,12 @@ public class Server extends Thread {
                                         }).collect(Collectors.toSet())
                                 );
                                  Broadcast broadcast = new Broadcast(vLink, vLSA, owner);
-                                 broadcast.start();
-                                 broadcast.join();
-                                 owner.getPorts()[owner.getLinkId(toDelete)] = null;
+                                 broadcast.run();
+                                 owner.removeLink(toDelete);
                                  flag = true;
                                  owner.getLsd().removeFromStore(lsa.linkStateID);
                             }
                         }
-                        catch (InterruptedException e) {}
                         catch (DatabaseException e) {
                             //System.out.println("DB error.");
                         }
@@ -244,41 +383,42 @@ public class Server extends Thread {
                     }
                 }
 
-                if (!flag)
-                    owner.getLsd().addToStore(lsa.linkStateID, lsa);
-
-                Vector<Link> links = new Vector(Arrays.stream(owner.getPorts())
-                        .filter( el -> {
-                            if (Objects.isNull(el))
-                                return false;
-                            else if (el.getOtherEnd(owner.getSimulatedIp()).getSimulatedIPAddress().equals(rcv.srcIP))
-                                return false;
-                            else if (el.getOtherEnd(owner.getSimulatedIp()).getStatus() != RouterStatus.TWO_WAY)
-                                return false;
-                            return true;
-                        }).collect(Collectors.toSet())
-                );
-
-
-                Broadcast broadcast = new Broadcast(links, lsas, owner);
-                broadcast.start();
+                if (flag) {
+                    accepted.add(lsa);
+                    owner.getLsd().markFlooded(lsa);
+                    owner.getStats().lsasAccepted.incrementAndGet();
+                } else
+                    toStore.add(lsa); // checked again when stored, another packet may have brought a newer one
             }
             else {
-                //System.out.println("Dropping.");
+                owner.getStats().lsasDropped.incrementAndGet(); // stale
             }
 
         }
-    }
-
 
-
-    private LinkedList<LinkDescription> getRemoved(LinkedList<LinkDescription> oldD, LinkedList<LinkDescription> newD) {
-        LinkedList<LinkDescription> inter = new LinkedList<>();
-        for (LinkDescription ld : oldD) {
-            if (!newD.contains(ld))
-                inter.add(ld);
+        if (!toStore.isEmpty()) {
+            List<LSA> installed = owner.getLsd().addAllToStore(toStore);
+            accepted.addAll(installed);
+            owner.getStats().lsasAccepted.addAndGet(installed.size());
+            owner.getStats().lsasDropped.addAndGet(toStore.size() - installed.size());
         }
-        return inter;
+
+        if (accepted.isEmpty())
+            return;
+
+        Vector<Link> links = new Vector(Arrays.stream(owner.getPorts())
+                .filter( el -> {
+                    if (Objects.isNull(el))
+                        return false;
+                    else if (el.getOtherEnd(owner.getSimulatedIp()).getSimulatedIPAddress().equals(rcv.srcIP))
+                        return false;
+                    else if (el.getOtherEnd(owner.getSimulatedIp()).getStatus() != RouterStatus.TWO_WAY)
+                        return false;
+                    return true;
+                }).collect(Collectors.toSet())
+        );
+
+        owner.getExecutor().execute(new Broadcast(links, accepted, owner));
     }
 
 }
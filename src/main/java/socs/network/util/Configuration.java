@@ -15,10 +15,18 @@ public class Configuration {
     _config = ConfigFactory.parseFile(new File(path));
   }
 
+  public boolean hasPath(String key) {
+    return _config.hasPath(key);
+  }
+
   public String getString(String key) {
     return _config.getString(key);
   }
 
+  public String getString(String key, String defaultValue) {
+    return hasPath(key) ? getString(key) : defaultValue;
+  }
+
   public Boolean getBoolean(String key) {
     return _config.getBoolean(key);
   }
@@ -27,6 +35,10 @@ public class Configuration {
     return _config.getInt(key);
   }
 
+  public int getInt(String key, int defaultValue) {
+    return hasPath(key) ? getInt(key) : defaultValue;
+  }
+
   public short getShort(String key) {
     return (short) _config.getInt(key);
   }
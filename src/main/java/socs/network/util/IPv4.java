@@ -0,0 +1,72 @@
+package socs.network.util;
+
+/**
+ * Immutable simulated IPv4 address packed in an int.
+ * Parsed once where addresses enter the router (configuration, terminal, wire),
+ * then compared and hashed as an int everywhere else.
+ */
+public final class IPv4 implements Comparable<IPv4> {
+
+    private final int address;
+
+    private IPv4(int address) {
+        this.address = address;
+    }
+
+    /**
+     * Parses a dotted address
+     * @param ip dotted address
+     * @return address
+     * @throws IllegalArgumentException ip is null or not a valid IPv4 address
+     */
+    public static IPv4 parse(String ip) {
+        if (ip == null || !Utility.validateIP(ip))
+            throw new IllegalArgumentException("Invalid IP address " + ip);
+        return new IPv4(Utility.ipToInt(ip));
+    }
+
+    /**
+     * Unpacks an address, 0 maps to null as on the wire
+     * @param address packed address
+     * @return address, null for 0
+     */
+    public static IPv4 fromInt(int address) {
+        return address == 0 ? null : new IPv4(address);
+    }
+
+    /**
+     * Packs an address, null maps to 0 as on the wire
+     * @param ip address, may be null
+     * @return packed address
+     */
+    public static int toInt(IPv4 ip) {
+        return ip == null ? 0 : ip.address;
+    }
+
+    public int intValue() {
+        return address;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof IPv4 && ((IPv4) obj).address == address;
+    }
+
+    @Override
+    public int hashCode() {
+        return address;
+    }
+
+    /**
+     * Orders addresses numerically, as unsigned ints
+     */
+    @Override
+    public int compareTo(IPv4 other) {
+        return Integer.compareUnsigned(address, other.address);
+    }
+
+    @Override
+    public String toString() {
+        return address == 0 ? "0.0.0.0" : Utility.intToIp(address);
+    }
+}
@@ -17,9 +17,44 @@ public class Utility {
         return PATTERN.matcher(ip).matches();
     }
 
+    /**
+     * Packs a dotted IPv4 address into an int, null maps to 0
+     * @param ip dotted address
+     * @return packed address
+     */
+    public static int ipToInt(final String ip) {
+        if (ip == null)
+            return 0;
+        int packed = 0;
+        int octet = 0;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c == '.') {
+                packed = (packed << 8) | octet;
+                octet = 0;
+            } else
+                octet = octet * 10 + (c - '0');
+        }
+        return (packed << 8) | octet;
+    }
+
+    /**
+     * Unpacks an int into a dotted IPv4 address, 0 maps to null
+     * @param ip packed address
+     * @return dotted address
+     */
+    public static String intToIp(final int ip) {
+        if (ip == 0)
+            return null;
+        return ((ip >>> 24) & 0xFF) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+
     public static SOSPFPacketType getSOSPFPacketType(SOSPFPacket packet) {
         if (packet.sospfType == 0) return SOSPFPacketType.HELLO;
         else if (packet.sospfType == 1) return SOSPFPacketType.LSUPDATE;
+        else if (packet.sospfType == 2) return SOSPFPacketType.DBD;
+        else if (packet.sospfType == 3) return SOSPFPacketType.LSREQUEST;
+        else if (packet.sospfType == 4) return SOSPFPacketType.DATA;
         else return SOSPFPacketType.UNKNOWN;
     }
 
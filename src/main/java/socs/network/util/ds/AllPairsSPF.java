@@ -0,0 +1,93 @@
+package socs.network.util.ds;
+
+import socs.network.util.IPv4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Shortest paths between every pair of routers: one SPF per source over a shared CompactGraph,
+ * sources split across a fork-join pool.
+ * Results are streamed to a consumer as each source completes, nothing is kept for the whole matrix.
+ */
+public class AllPairsSPF {
+
+    /**
+     * Receives the shortest path of one pair.
+     * Called concurrently from the pool threads, all pairs of one source from the same thread in a row.
+     */
+    public interface PathConsumer {
+        /**
+         * @param source first router
+         * @param destination last router
+         * @param cost path cost, CompactDijkstra.UNREACHABLE if no path exists
+         * @param path routers from source to destination, null if no path exists
+         */
+        void accept(IPv4 source, IPv4 destination, int cost, List<IPv4> path);
+    }
+
+    private static final int SOURCES_PER_TASK = 8;
+
+    private final CompactGraph graph; // read only, shared by every task
+
+    public AllPairsSPF(CompactGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Runs the SPF of every source and waits for all of them
+     * @param pool pool to run on
+     * @param consumer receives every pair
+     */
+    public void run(ForkJoinPool pool, PathConsumer consumer) {
+        pool.invoke(new SourceRange(0, graph.getVertexCount(), consumer));
+    }
+
+    private class SourceRange extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final PathConsumer consumer;
+
+        SourceRange(int from, int to, PathConsumer consumer) {
+            this.from = from;
+            this.to = to;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SOURCES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SourceRange(from, middle, consumer), new SourceRange(middle, to, consumer));
+                return;
+            }
+            CompactDijkstra spf = new CompactDijkstra(graph);
+            for (int source = from; source < to; source++) {
+                spf.start(source);
+                report(spf, source, consumer);
+            }
+        }
+    }
+
+    private void report(CompactDijkstra spf, int source, PathConsumer consumer) {
+        RouterIdTable ids = graph.getIds();
+        IPv4 sourceName = ids.getName(source);
+        for (int destination = 0; destination < graph.getVertexCount(); destination++) {
+            int cost = spf.getDistance(destination);
+            List<IPv4> path = null;
+            if (cost != CompactDijkstra.UNREACHABLE) {
+                path = new ArrayList<>();
+                for (int hop = destination; hop >= 0; hop = spf.getParent(hop))
+                    path.add(ids.getName(hop));
+                Collections.reverse(path);
+            }
+            consumer.accept(sourceName, ids.getName(destination), cost, path);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package socs.network.util.ds;
+
+import java.util.Arrays;
+
+/**
+ * Dijkstra over a CompactGraph with a primitive binary heap.
+ * Heap entries pack distance and vertex in one long; stale entries are skipped when polled (lazy deletion).
+ * Runs in O((V+E) log V) without allocating per vertex or per edge.
+ * Every equal-cost predecessor is recorded, the one of the first path found leading the list.
+ */
+public class CompactDijkstra {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final CompactGraph graph;
+    private int[] distance;
+    private int[] parent; // previous hop, -1 for the source or an unreachable vertex
+    private int[] predecessorHead; // first node of the equal-cost predecessor list, -1 if none
+    private int[] predecessorNext = new int[16]; // node => next node, -1 at the end
+    private int[] predecessorVertex = new int[16]; // node => predecessor
+    private int predecessorCount;
+    private int[] settledOrder; // vertices by increasing distance
+    private int settledCount;
+
+    private long[] heap = new long[16];
+    private int heapSize;
+
+    public CompactDijkstra(CompactGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Computes the shortest-path tree
+     * @param source root router id
+     */
+    public void start(int source) {
+        int n = graph.getVertexCount();
+        distance = new int[n];
+        parent = new int[n];
+        settledOrder = new int[n];
+        settledCount = 0;
+        Arrays.fill(distance, UNREACHABLE);
+        Arrays.fill(parent, -1);
+        predecessorHead = new int[n];
+        Arrays.fill(predecessorHead, -1);
+        predecessorCount = 0;
+
+        boolean[] settled = new boolean[n];
+        heapSize = 0;
+        distance[source] = 0;
+        push(0, source);
+
+        while (heapSize > 0) {
+            long entry = poll();
+            int vertex = (int) entry;
+            if (settled[vertex])
+                continue; // stale entry, vertex already settled with a shorter distance
+            settled[vertex] = true;
+            settledOrder[settledCount++] = vertex;
+
+            int base = (int) (entry >> 32);
+            for (int e = graph.edgesStart(vertex); e < graph.edgesEnd(vertex); e++) {
+                int target = graph.target(e);
+                if (settled[target])
+                    continue;
+                int candidate = base + graph.weight(e);
+                if (candidate < distance[target]) {
+                    distance[target] = candidate;
+                    parent[target] = vertex;
+                    predecessorHead[target] = addPredecessor(vertex, -1);
+                    push(candidate, target);
+                } else if (candidate == distance[target] && target != vertex) {
+                    int head = predecessorHead[target];
+                    predecessorNext[head] = addPredecessor(vertex, predecessorNext[head]);
+                }
+            }
+        }
+    }
+
+    public int getDistance(int vertex) {
+        return distance[vertex];
+    }
+
+    /**
+     * @param vertex router id
+     * @return previous hop, -1 for the source or an unreachable vertex
+     */
+    public int getParent(int vertex) {
+        return parent[vertex];
+    }
+
+    /**
+     * @param vertex router id
+     * @return every equal-cost previous hop, the one of getParent first
+     */
+    public int[] getPredecessors(int vertex) {
+        int count = 0;
+        for (int node = predecessorHead[vertex]; node >= 0; node = predecessorNext[node])
+            count++;
+        int[] predecessors = new int[count];
+        int i = 0;
+        for (int node = predecessorHead[vertex]; node >= 0; node = predecessorNext[node])
+            predecessors[i++] = predecessorVertex[node];
+        return predecessors;
+    }
+
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    /**
+     * @param i rank, 0 for the source
+     * @return i-th vertex by increasing distance
+     */
+    public int getSettled(int i) {
+        return settledOrder[i];
+    }
+
+    private int addPredecessor(int vertex, int next) {
+        if (predecessorCount == predecessorVertex.length) {
+            predecessorVertex = Arrays.copyOf(predecessorVertex, predecessorCount * 2);
+            predecessorNext = Arrays.copyOf(predecessorNext, predecessorCount * 2);
+        }
+        predecessorVertex[predecessorCount] = vertex;
+        predecessorNext[predecessorCount] = next;
+        return predecessorCount++;
+    }
+
+    private void push(int dist, int vertex) {
+        if (heapSize == heap.length)
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        long entry = ((long) dist << 32) | (vertex & 0xFFFFFFFFL);
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (heap[up] <= entry)
+                break;
+            heap[i] = heap[up];
+            i = up;
+        }
+        heap[i] = entry;
+    }
+
+    private long poll() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child])
+                child++;
+            if (last <= heap[child])
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        if (heapSize > 0)
+            heap[i] = last;
+        return top;
+    }
+}
@@ -0,0 +1,112 @@
+package socs.network.util.ds;
+
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Directed graph in compressed sparse row form, built from a collection of LSA.
+ * Routers are interned to dense ids; the edges of router v are targets[offsets[v]] to targets[offsets[v + 1] - 1]
+ * with the matching weights. When a router lists the same neighbor twice the first link wins.
+ * Expects at most one LSA per router, as held by the link state database.
+ */
+public class CompactGraph {
+
+    private final RouterIdTable ids;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+
+    public CompactGraph(Collection<LSA> lsas) {
+        int linkCount = 0;
+        for (LSA lsa : lsas)
+            linkCount += lsa.links.size();
+        ids = new RouterIdTable(lsas.size());
+
+        // intern every router and count its links
+        int[] degree = new int[Math.max(16, lsas.size())];
+        for (LSA lsa : lsas) {
+            int source = ids.intern(lsa.linkStateID);
+            for (LinkDescription link : lsa.links)
+                ids.intern(link.getLinkID());
+            if (ids.size() > degree.length)
+                degree = Arrays.copyOf(degree, Math.max(degree.length * 2, ids.size()));
+            degree[source] += lsa.links.size();
+        }
+
+        int n = ids.size();
+        int[] start = new int[n + 1];
+        for (int v = 0; v < n; v++)
+            start[v + 1] = start[v] + degree[v];
+
+        // fill the rows, skipping repeated neighbors
+        int[] rawTargets = new int[linkCount];
+        int[] rawWeights = new int[linkCount];
+        int[] end = Arrays.copyOf(start, n);
+        int[] seen = new int[n]; // source id + 1 of the last row each target was written to
+        int kept = 0;
+        for (LSA lsa : lsas) {
+            int source = ids.getId(lsa.linkStateID);
+            for (LinkDescription link : lsa.links) {
+                int target = ids.getId(link.getLinkID());
+                if (seen[target] == source + 1)
+                    continue;
+                seen[target] = source + 1;
+                rawTargets[end[source]] = target;
+                rawWeights[end[source]] = link.getTosMetrics();
+                end[source]++;
+                kept++;
+            }
+        }
+
+        if (kept == linkCount) {
+            offsets = start;
+            targets = rawTargets;
+            weights = rawWeights;
+        } else { // close the gaps left by repeated neighbors
+            offsets = new int[n + 1];
+            targets = new int[kept];
+            weights = new int[kept];
+            for (int v = 0; v < n; v++) {
+                int length = end[v] - start[v];
+                System.arraycopy(rawTargets, start[v], targets, offsets[v], length);
+                System.arraycopy(rawWeights, start[v], weights, offsets[v], length);
+                offsets[v + 1] = offsets[v] + length;
+            }
+        }
+    }
+
+    public RouterIdTable getIds() {
+        return ids;
+    }
+
+    public int getVertexCount() {
+        return ids.size();
+    }
+
+    /**
+     * @param vertex router id
+     * @return index of the first edge of the router
+     */
+    public int edgesStart(int vertex) {
+        return offsets[vertex];
+    }
+
+    /**
+     * @param vertex router id
+     * @return index past the last edge of the router
+     */
+    public int edgesEnd(int vertex) {
+        return offsets[vertex + 1];
+    }
+
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    public int weight(int edge) {
+        return weights[edge];
+    }
+}
@@ -0,0 +1,114 @@
+package socs.network.util.ds;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel: a ring of buckets advanced by a single thread, one bucket per tick.
+ * A timeout lands in the bucket of its deadline along with the number of full turns left,
+ * so scheduling and cancelling are O(1) whatever the number of pending timeouts.
+ * Precision is one tick; tasks run on the wheel thread and must be short.
+ */
+public class HashedWheelTimer {
+
+    /**
+     * Handle on a scheduled task
+     */
+    public static class Timeout {
+        private final Runnable task;
+        private final long deadline; // tick the task is due at
+        private volatile boolean cancelled = false;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Prevents the task from running, if it has not run yet
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final long tickMillis;
+    private final List<List<Timeout>> wheel;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>(); // scheduled since the last tick
+    private final Thread worker;
+    private final long startTime;
+    private volatile long tick = 0;
+
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0 || wheelSize < 1)
+            throw new IllegalArgumentException("Invalid timer wheel " + tickDuration + "x" + wheelSize);
+        this.tickMillis = unit.toMillis(tickDuration);
+        this.wheel = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++)
+            wheel.add(new ArrayList<>());
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Runs a task once after a delay
+     * @param task task to run on the wheel thread
+     * @param delay delay, rounded up to whole ticks
+     * @param unit unit of the delay
+     * @return handle to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long ticks = Math.max(1, (unit.toMillis(delay) + tickMillis - 1) / tickMillis);
+        Timeout timeout = new Timeout(task, tick + ticks);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the wheel thread, pending tasks never run
+     */
+    public void stop() {
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                long next = startTime + TimeUnit.MILLISECONDS.toNanos((tick + 1) * tickMillis);
+                long sleep = TimeUnit.NANOSECONDS.toMillis(next - System.nanoTime());
+                if (sleep > 0)
+                    Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            long current = ++tick;
+            Timeout timeout;
+            while ((timeout = pending.poll()) != null) {
+                if (!timeout.cancelled)
+                    wheel.get((int) (Math.max(timeout.deadline, current) % wheel.size())).add(timeout);
+            }
+
+            Iterator<Timeout> bucket = wheel.get((int) (current % wheel.size())).iterator();
+            while (bucket.hasNext()) {
+                Timeout due = bucket.next();
+                if (due.cancelled) {
+                    bucket.remove();
+                } else if (due.deadline <= current) { // otherwise due on a later turn
+                    bucket.remove();
+                    try {
+                        due.task.run();
+                    } catch (RuntimeException e) {
+                        System.out.println("Timer task failed: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package socs.network.util.ds;
+
+import socs.network.message.LinkDescription;
+import socs.network.util.IPv4;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Shortest-path tree from one source kept up to date as LSAs change.
+ *
+ * Each update replaces the outgoing edges of one router. Only the affected part of the tree is repaired:
+ *  - an edge that was removed or got more expensive and carried a tree branch invalidates that subtree,
+ *    which is then re-attached from its cheapest valid in-neighbors;
+ *  - an edge that was added or got cheaper seeds its target if it improves it.
+ * From those seeds a Dijkstra pass propagates the changes, leaving the rest of the tree untouched.
+ * The vertices touched by the repairs are collected until drained, so routes can be rebuilt for them only.
+ * When a router lists the same neighbor twice the first link wins.
+ */
+public class IncrementalSPF {
+
+    private final IPv4 source;
+
+    private final Map<IPv4, Map<IPv4, Integer>> out = new HashMap<>(); // router => (neighbor => weight)
+    private final Map<IPv4, Map<IPv4, Integer>> in = new HashMap<>();  // neighbor => (router => weight)
+
+    private final Map<IPv4, Integer> distance = new HashMap<>();
+    private final Map<IPv4, IPv4> parent = new HashMap<>();
+    private final Map<IPv4, Set<IPv4>> children = new HashMap<>();
+
+    private final Set<IPv4> changed = new HashSet<>(); // distance or in-edges changed since the last drain
+
+    public IncrementalSPF(IPv4 source) {
+        this.source = source;
+        distance.put(source, 0);
+    }
+
+    /**
+     * Heap entry, a vertex with the distance it had when pushed
+     */
+    private static class Entry {
+        final IPv4 vertex;
+        final int distance;
+
+        Entry(IPv4 vertex, int distance) {
+            this.vertex = vertex;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Replaces the outgoing edges of a router and repairs the tree
+     * @param linkStateID router whose LSA changed
+     * @param links new links of the router, null if its LSA was removed
+     */
+    public void update(IPv4 linkStateID, Collection<LinkDescription> links) {
+
+        Map<IPv4, Integer> newEdges = new LinkedHashMap<>();
+        if (links != null) {
+            for (LinkDescription ld : links)
+                newEdges.putIfAbsent(ld.getLinkID(), ld.getTosMetrics());
+        }
+        Map<IPv4, Integer> oldEdges = out.getOrDefault(linkStateID, Collections.emptyMap());
+
+        List<IPv4> increased = new ArrayList<>();
+        List<IPv4> decreased = new ArrayList<>();
+        for (Map.Entry<IPv4, Integer> edge : oldEdges.entrySet()) {
+            Integer weight = newEdges.get(edge.getKey());
+            if (weight == null || weight > edge.getValue())
+                increased.add(edge.getKey());
+        }
+        for (Map.Entry<IPv4, Integer> edge : newEdges.entrySet()) {
+            Integer weight = oldEdges.get(edge.getKey());
+            if (weight == null || edge.getValue() < weight)
+                decreased.add(edge.getKey());
+        }
+
+        // apply to the adjacency
+        for (IPv4 neighbor : oldEdges.keySet()) {
+            Map<IPv4, Integer> reverse = in.get(neighbor);
+            reverse.remove(linkStateID);
+            if (reverse.isEmpty())
+                in.remove(neighbor);
+        }
+        if (newEdges.isEmpty())
+            out.remove(linkStateID);
+        else
+            out.put(linkStateID, newEdges);
+        for (Map.Entry<IPv4, Integer> edge : newEdges.entrySet())
+            in.computeIfAbsent(edge.getKey(), k -> new HashMap<>()).put(linkStateID, edge.getValue());
+
+        changed.addAll(increased);
+        changed.addAll(decreased);
+
+        PriorityQueue<Entry> heap = new PriorityQueue<>(Comparator.comparingInt((Entry e) -> e.distance));
+
+        // detach every subtree hanging from an edge that got worse
+        Set<IPv4> invalidated = new HashSet<>();
+        for (IPv4 target : increased) {
+            if (linkStateID.equals(parent.get(target)))
+                invalidate(target, invalidated);
+        }
+        for (IPv4 vertex : invalidated) {
+            for (Map.Entry<IPv4, Integer> edge : in.getOrDefault(vertex, Collections.emptyMap()).entrySet())
+                relax(edge.getKey(), vertex, edge.getValue(), heap);
+        }
+
+        // seed the edges that got better
+        for (IPv4 target : decreased)
+            relax(linkStateID, target, newEdges.get(target), heap);
+
+        propagate(heap);
+    }
+
+    /**
+     * Removes a vertex and its whole subtree from the tree
+     */
+    private void invalidate(IPv4 root, Set<IPv4> invalidated) {
+        Deque<IPv4> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            IPv4 vertex = stack.pop();
+            if (!invalidated.add(vertex))
+                continue;
+            Set<IPv4> below = children.remove(vertex);
+            if (below != null)
+                below.forEach(stack::push);
+            distance.remove(vertex);
+            detach(vertex);
+            changed.add(vertex);
+        }
+    }
+
+    private void detach(IPv4 vertex) {
+        IPv4 previous = parent.remove(vertex);
+        if (previous != null) {
+            Set<IPv4> siblings = children.get(previous);
+            if (siblings != null) {
+                siblings.remove(vertex);
+                if (siblings.isEmpty())
+                    children.remove(previous);
+            }
+        }
+    }
+
+    /**
+     * Attaches target below from if that shortens its distance
+     */
+    private void relax(IPv4 from, IPv4 target, int weight, PriorityQueue<Entry> heap) {
+        Integer base = distance.get(from);
+        if (base == null || target.equals(source))
+            return;
+        int candidate = base + weight;
+        if (candidate < getDistance(target)) {
+            distance.put(target, candidate);
+            detach(target);
+            parent.put(target, from);
+            children.computeIfAbsent(from, k -> new HashSet<>()).add(target);
+            changed.add(target);
+            heap.add(new Entry(target, candidate));
+        }
+    }
+
+    private void propagate(PriorityQueue<Entry> heap) {
+        while (!heap.isEmpty()) {
+            Entry entry = heap.poll();
+            if (entry.distance != getDistance(entry.vertex))
+                continue; // stale entry
+            for (Map.Entry<IPv4, Integer> edge : out.getOrDefault(entry.vertex, Collections.emptyMap()).entrySet())
+                relax(entry.vertex, edge.getKey(), edge.getValue(), heap);
+        }
+    }
+
+    /**
+     * Returns the distance from the source, Integer.MAX_VALUE if unreachable
+     * @param vertex destination
+     * @return shortest distance
+     */
+    public int getDistance(IPv4 vertex) {
+        Integer d = distance.get(vertex);
+        return d == null ? Integer.MAX_VALUE : d;
+    }
+
+    public IPv4 getSource() {
+        return source;
+    }
+
+    /**
+     * @return copy of the distance of every reachable vertex
+     */
+    public Map<IPv4, Integer> getDistances() {
+        return new HashMap<>(distance);
+    }
+
+    /**
+     * Returns every equal-cost previous hop of each reachable vertex but the source,
+     * the one of the tree first
+     * @return vertex => predecessors
+     */
+    public Map<IPv4, List<IPv4>> getPredecessors() {
+        Map<IPv4, List<IPv4>> predecessors = new HashMap<>();
+        for (IPv4 vertex : parent.keySet())
+            predecessors.put(vertex, getPredecessors(vertex));
+        return predecessors;
+    }
+
+    /**
+     * Returns every equal-cost previous hop of a vertex, the one of the tree first
+     * @param vertex destination
+     * @return predecessors, empty for the source and unreachable vertices
+     */
+    public List<IPv4> getPredecessors(IPv4 vertex) {
+        IPv4 first = parent.get(vertex);
+        if (first == null)
+            return Collections.emptyList();
+        List<IPv4> list = new ArrayList<>(1);
+        list.add(first);
+        int d = distance.get(vertex);
+        for (Map.Entry<IPv4, Integer> edge : in.getOrDefault(vertex, Collections.emptyMap()).entrySet()) {
+            IPv4 from = edge.getKey();
+            Integer base = distance.get(from);
+            if (base != null && base + edge.getValue() == d && !from.equals(vertex) && !from.equals(first))
+                list.add(from);
+        }
+        return list;
+    }
+
+    /**
+     * Returns the vertices whose route may have changed since the last call: those whose distance or in-edges
+     * changed, the out-neighbors of those, and every vertex below them in the shortest-path DAG
+     * @return affected vertices, reachable or not
+     */
+    public Set<IPv4> drainAffected() {
+        Set<IPv4> affected = new HashSet<>(changed);
+        Deque<IPv4> stack = new ArrayDeque<>(changed);
+        while (!stack.isEmpty()) {
+            IPv4 vertex = stack.pop();
+            Integer base = distance.get(vertex);
+            for (Map.Entry<IPv4, Integer> edge : out.getOrDefault(vertex, Collections.emptyMap()).entrySet()) {
+                IPv4 target = edge.getKey();
+                Integer d = distance.get(target);
+                // a changed vertex may have stopped being an equal-cost previous hop of any of its neighbors
+                boolean below = base != null && d != null && base + edge.getValue() == d;
+                if ((below || changed.contains(vertex)) && affected.add(target))
+                    stack.push(target);
+            }
+        }
+        changed.clear();
+        return affected;
+    }
+}
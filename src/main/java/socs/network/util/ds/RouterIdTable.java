@@ -0,0 +1,57 @@
+package socs.network.util.ds;
+
+import socs.network.util.IPv4;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Interns router IPs to dense int ids, 0 to size()-1 in order of first appearance.
+ */
+public class RouterIdTable {
+
+    private final HashMap<IPv4, Integer> ids;
+    private IPv4[] names;
+    private int size = 0;
+
+    public RouterIdTable(int expected) {
+        ids = new HashMap<>(Math.max(16, expected * 4 / 3 + 1));
+        names = new IPv4[Math.max(16, expected)];
+    }
+
+    /**
+     * Returns the id of a router, assigning the next one if it is new
+     * @param name router IP
+     * @return dense id
+     */
+    public int intern(IPv4 name) {
+        Integer id = ids.get(name);
+        if (id != null)
+            return id;
+        if (size == names.length)
+            names = Arrays.copyOf(names, size * 2);
+        names[size] = name;
+        ids.put(name, size);
+        return size++;
+    }
+
+    /**
+     * Returns the id of a router
+     * @param name router IP
+     * @return dense id, -1 if unknown
+     */
+    public int getId(IPv4 name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public IPv4 getName(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("Unknown router id " + id);
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -1,18 +1,20 @@
 package socs.network.util.ds;
 
+import socs.network.util.IPv4;
+
 import java.util.Objects;
 
 /**
  * Created by ericschaal on 2017-03-01.
  */
 public class Vertex {
-    final private String id;
+    final private IPv4 id;
 
 
-    public Vertex(String id) {
+    public Vertex(IPv4 id) {
         this.id = id;
     }
-    public String getId() {
+    public IPv4 getId() {
         return id;
     }
 
@@ -41,7 +43,7 @@ public class Vertex {
 
     @Override
     public String toString() {
-        return id;
+        return String.valueOf(id);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,142 @@
+package socs.network.message;
+
+import org.junit.Test;
+import socs.network.util.IPv4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Vector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips through the wire format, and frames the decoder must reject.
+ */
+public class PacketCodecTest {
+
+    private static final IPv4 SRC = IPv4.parse("192.168.1.1");
+    private static final IPv4 DST = IPv4.parse("192.168.1.2");
+
+    private static final int SRC_IP_OFFSET = 8;
+    private static final int FIRST_LSA_OFFSET = 30;
+    private static final int FIRST_LINK_OFFSET = FIRST_LSA_OFFSET + 13;
+
+    @Test
+    public void linkStateUpdateRoundTrips() throws IOException {
+        LSA lsa = new LSA(SRC, 42, 17, true, Arrays.asList(
+                new LinkDescription(SRC, -1, 0),
+                new LinkDescription(DST, 2, 7)));
+        SOSPFPacket packet = builder().LSUPDATE().lsaArray(new Vector<>(Arrays.asList(lsa))).build();
+
+        SOSPFPacket decoded = roundTrip(packet);
+
+        assertEquals(1, decoded.sospfType);
+        assertEquals(SRC, decoded.srcIP);
+        assertEquals(DST, decoded.dstIP);
+        assertEquals(packet.srcProcessPort, decoded.srcProcessPort);
+        assertEquals("127.0.0.1", decoded.srcProcessIP);
+        assertEquals(1, decoded.lsaArray.size());
+        LSA other = decoded.lsaArray.get(0);
+        assertEquals(SRC, other.linkStateID);
+        assertEquals(42, other.lsaSeqNumber);
+        assertEquals(17, other.age);
+        assertTrue(other.delete_ack);
+        assertEquals(2, other.links.size());
+        assertEquals(DST, other.links.get(1).getLinkID());
+        assertEquals(2, other.links.get(1).getPortNum());
+        assertEquals(7, other.links.get(1).getTosMetrics());
+        assertNull(decoded.lsaHeaders);
+        assertNull(decoded.payload);
+    }
+
+    @Test
+    public void databaseDescriptionAndDataRoundTrip() throws IOException {
+        Vector<LSAHeader> headers = new Vector<>(Arrays.asList(new LSAHeader(SRC, 3), new LSAHeader(DST, -5)));
+        SOSPFPacket dbd = roundTrip(builder().DBD().lsaHeaders(headers).build());
+        assertEquals(2, dbd.lsaHeaders.size());
+        assertEquals(DST, dbd.lsaHeaders.get(1).linkStateID);
+        assertEquals(-5, dbd.lsaHeaders.get(1).lsaSeqNumber);
+        assertNull(dbd.lsaArray);
+
+        byte[] payload = "hello".getBytes(StandardCharsets.UTF_8);
+        SOSPFPacket data = roundTrip(builder().DATA().ttl((short) 64).payload(payload).build());
+        assertEquals(64, data.ttl);
+        assertArrayEquals(payload, data.payload);
+    }
+
+    @Test
+    public void rejectsMissingAddresses() throws IOException {
+        byte[] body = PacketCodec.encode(updateWithOneLink());
+
+        assertRejected(patchInt(body, SRC_IP_OFFSET, 0));
+        assertRejected(patchInt(body, FIRST_LSA_OFFSET, 0));
+        assertRejected(patchInt(body, FIRST_LINK_OFFSET, 0));
+    }
+
+    @Test
+    public void rejectsMalformedBodies() throws IOException {
+        byte[] body = PacketCodec.encode(updateWithOneLink());
+
+        byte[] version = body.clone();
+        version[0] = PacketCodec.VERSION + 1;
+        assertRejected(version);
+        assertRejected(Arrays.copyOf(body, body.length - 1)); // truncated
+        assertRejected(Arrays.copyOf(body, body.length + 1)); // trailing byte
+        assertRejected(patchInt(body, FIRST_LSA_OFFSET - 4, Integer.MAX_VALUE)); // LSA count past the end
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsInvalidFrameLength() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(-1);
+        PacketCodec.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private static SOSPFPacket updateWithOneLink() {
+        LSA lsa = new LSA(SRC, 1, false, Arrays.asList(new LinkDescription(DST, 0, 1)));
+        return builder().LSUPDATE().lsaArray(new Vector<>(Arrays.asList(lsa))).build();
+    }
+
+    private static SOSPFPacket.Builder builder() {
+        return new SOSPFPacket.Builder()
+                .srcIP(SRC)
+                .dstIP(DST)
+                .srcProccessIP("127.0.0.1")
+                .srcProcessPort((short) 9001)
+                .routerID(SRC)
+                .neighborID(SRC);
+    }
+
+    private static SOSPFPacket roundTrip(SOSPFPacket packet) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        PacketCodec.writeFrame(out, packet);
+        out.flush();
+        return PacketCodec.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private static byte[] patchInt(byte[] body, int offset, int value) {
+        byte[] patched = body.clone();
+        ByteBuffer.wrap(patched).putInt(offset, value);
+        return patched;
+    }
+
+    private static void assertRejected(byte[] body) {
+        try {
+            PacketCodec.decode(ByteBuffer.wrap(body));
+            fail("decoded a malformed packet");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package socs.network.node;
+
+import org.junit.Test;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+import socs.network.util.IPv4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writer path of the database: what is stored, what is flooded, and the routing table derived from it.
+ */
+public class LinkStateDatabaseTest {
+
+    private static final IPv4 SELF = IPv4.parse("10.0.0.1");
+    private static final IPv4 X = IPv4.parse("10.0.0.2");
+    private static final IPv4 Y = IPv4.parse("10.0.0.3");
+
+    @Test
+    public void reportsEachChangedLSAOnce() throws Exception {
+        LinkStateDatabase lsd = database(true);
+
+        assertEquals(1, lsd.getChangedLSA().size()); // own LSA, never flooded yet
+        assertTrue(lsd.getChangedLSA().isEmpty());
+
+        lsd.addLinkToStore(SELF, new LinkDescription(X, 0, 3));
+        List<LSA> changed = lsd.getChangedLSA();
+        assertEquals(1, changed.size());
+        assertEquals(SELF, changed.get(0).linkStateID);
+        assertTrue(lsd.getChangedLSA().isEmpty());
+    }
+
+    @Test
+    public void receivedLSAsAreNotFloodedAgainAsChanges() {
+        LinkStateDatabase lsd = database(true);
+        lsd.getChangedLSA();
+
+        List<LSA> installed = lsd.addAllToStore(Collections.singletonList(lsa(X, 1)));
+        assertEquals(1, installed.size());
+        assertTrue(lsd.getChangedLSA().isEmpty());
+    }
+
+    @Test
+    public void keepsTheNewerInstance() {
+        LinkStateDatabase lsd = database(true);
+
+        assertEquals(1, lsd.addAllToStore(Collections.singletonList(lsa(X, 6))).size());
+        assertTrue(lsd.addAllToStore(Collections.singletonList(lsa(X, 5))).isEmpty());
+        assertTrue(lsd.addAllToStore(Collections.singletonList(lsa(X, 6))).isEmpty());
+        assertEquals(6, lsd.getFromStore(X).lsaSeqNumber);
+    }
+
+    @Test
+    public void concurrentPacketsNeverMoveTheSequenceNumberBack() throws Exception {
+        for (int run = 0; run < 200; run++) {
+            LinkStateDatabase lsd = database(true);
+            CountDownLatch go = new CountDownLatch(1);
+            Thread older = new Thread(() -> store(lsd, go, lsa(X, 5)));
+            Thread newer = new Thread(() -> store(lsd, go, lsa(X, 6)));
+            older.start();
+            newer.start();
+            go.countDown();
+            older.join();
+            newer.join();
+            assertEquals("run " + run, 6, lsd.getFromStore(X).lsaSeqNumber);
+        }
+    }
+
+    @Test
+    public void incrementalTablesMatchFullSPF() {
+        Random random = new Random(3);
+        for (int trial = 0; trial < 50; trial++) {
+            LinkStateDatabase lsd = database(true);
+            Map<IPv4, Integer> sequence = new HashMap<>();
+            int routers = 2 + random.nextInt(10);
+            for (int change = 0; change < 40; change++) {
+                int burst = 1 + random.nextInt(3); // the tree is repaired for several LSAs before one table
+                for (int b = 0; b < burst; b++) {
+                    IPv4 id = router(random.nextInt(routers + 1));
+                    int seq = sequence.merge(id, 1, Integer::sum);
+                    List<LinkDescription> links = new ArrayList<>();
+                    links.add(new LinkDescription(id, -1, 0));
+                    int count = random.nextInt(4);
+                    for (int i = 0; i < count; i++)
+                        links.add(new LinkDescription(router(random.nextInt(routers + 1)), i, 1 + random.nextInt(3)));
+                    lsd.addAllToStore(Collections.singletonList(new LSA(id, seq, false, links)));
+                }
+
+                RoutingTable incremental = lsd.getRoutingTable();
+                RoutingTable full = RoutingTable.compute(0, SELF, lsd.getAllLSA());
+                String step = "trial " + trial + ", change " + change;
+                assertEquals(step, destinations(full), destinations(incremental));
+                for (RoutingTable.Route route : full.getRoutes()) {
+                    RoutingTable.Route other = incremental.getRoute(route.destination);
+                    assertEquals(step + " cost of " + route.destination, route.cost, other.cost);
+                    assertEquals(step + " next hops of " + route.destination, route.nextHops, other.nextHops);
+                }
+            }
+        }
+    }
+
+    private static void store(LinkStateDatabase lsd, CountDownLatch go, LSA lsa) {
+        try {
+            go.await();
+        } catch (InterruptedException e) {
+            return;
+        }
+        lsd.addAllToStore(Collections.singletonList(lsa));
+    }
+
+    private static HashSet<IPv4> destinations(RoutingTable table) {
+        HashSet<IPv4> destinations = new HashSet<>();
+        for (RoutingTable.Route route : table.getRoutes())
+            destinations.add(route.destination);
+        return destinations;
+    }
+
+    private static LinkStateDatabase database(boolean incremental) {
+        RouterDescription rd = new RouterDescription.RouterDescriptionBuilder()
+                .simulatedIPAddress(SELF)
+                .processIPAddress("127.0.0.1")
+                .processPortNumber((short) 1)
+                .build();
+        return new LinkStateDatabase(rd, incremental);
+    }
+
+    private static LSA lsa(IPv4 id, int seq) {
+        return new LSA(id, seq, false, Collections.singletonList(new LinkDescription(id, -1, 0)));
+    }
+
+    private static IPv4 router(int i) {
+        return i == 0 ? SELF : IPv4.parse("10.0.1." + i);
+    }
+}
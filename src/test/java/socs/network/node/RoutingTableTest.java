@@ -0,0 +1,86 @@
+package socs.network.node;
+
+import org.junit.Test;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+import socs.network.util.IPv4;
+import socs.network.util.ds.Edge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Full SPF over small databases: costs, equal-cost next hops and printed paths.
+ */
+public class RoutingTableTest {
+
+    private static final IPv4 A = IPv4.parse("10.0.0.1");
+    private static final IPv4 B = IPv4.parse("10.0.0.2");
+    private static final IPv4 C = IPv4.parse("10.0.0.3");
+    private static final IPv4 D = IPv4.parse("10.0.0.4");
+    private static final IPv4 E = IPv4.parse("10.0.0.5");
+
+    @Test
+    public void keepsEveryEqualCostNextHop() {
+        // A - B - D and A - C - D, both of cost 2
+        List<LSA> lsas = Arrays.asList(
+                lsa(A, B, 1, C, 1),
+                lsa(B, A, 1, D, 1),
+                lsa(C, A, 1, D, 1),
+                lsa(D, B, 1, C, 1));
+        RoutingTable table = RoutingTable.compute(0, A, lsas);
+
+        assertEquals(2, table.getRoute(D).cost);
+        assertEquals(new HashSet<>(Arrays.asList(B, C)), table.getRoute(D).nextHops);
+        assertEquals(new HashSet<>(Arrays.asList(B)), table.getRoute(B).nextHops);
+        assertEquals(0, table.getRoute(A).cost);
+    }
+
+    @Test
+    public void followsTheCheapestPath() {
+        // A - B - C costs 2, the direct A - C link costs 5
+        List<LSA> lsas = Arrays.asList(
+                lsa(A, B, 1, C, 5),
+                lsa(B, A, 1, C, 1),
+                lsa(C, A, 5, B, 1));
+        RoutingTable table = RoutingTable.compute(0, A, lsas);
+
+        assertEquals(2, table.getRoute(C).cost);
+        assertEquals(new HashSet<>(Arrays.asList(B)), table.getRoute(C).nextHops);
+        LinkedList<Edge> path = table.getPath(C);
+        assertEquals(2, path.size());
+        assertEquals(B, path.getFirst().getDestination().getId());
+        assertEquals(C, path.getLast().getDestination().getId());
+    }
+
+    @Test
+    public void leavesUnreachableRoutersOut() {
+        List<LSA> lsas = Arrays.asList(
+                lsa(A, B, 1),
+                lsa(B, A, 1),
+                lsa(E, D, 1),
+                lsa(D, E, 1));
+        RoutingTable table = RoutingTable.compute(0, A, lsas);
+
+        assertNull(table.getRoute(D));
+        assertNull(table.getRoute(E));
+        assertNull(table.getPath(E));
+    }
+
+    /**
+     * @param neighborsAndWeights neighbor, weight, neighbor, weight...
+     */
+    static LSA lsa(IPv4 id, Object... neighborsAndWeights) {
+        List<LinkDescription> links = new ArrayList<>();
+        links.add(new LinkDescription(id, -1, 0));
+        for (int i = 0; i < neighborsAndWeights.length; i += 2)
+            links.add(new LinkDescription((IPv4) neighborsAndWeights[i], i / 2, (Integer) neighborsAndWeights[i + 1]));
+        return new LSA(id, 0, false, links);
+    }
+}
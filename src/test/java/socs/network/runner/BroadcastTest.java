@@ -0,0 +1,161 @@
+package socs.network.runner;
+
+import org.junit.After;
+import org.junit.Test;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+import socs.network.message.PacketCodec;
+import socs.network.message.SOSPFPacket;
+import socs.network.node.Link;
+import socs.network.node.Router;
+import socs.network.node.RouterDescription;
+import socs.network.util.Configuration;
+import socs.network.util.IPv4;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Floods to neighbors listening on local sockets.
+ */
+public class BroadcastTest {
+
+    private static final IPv4 SELF = IPv4.parse("10.0.0.1");
+
+    private final List<ServerSocket> neighbors = new ArrayList<>();
+    private Router router;
+
+    @After
+    public void close() throws IOException {
+        for (ServerSocket neighbor : neighbors)
+            neighbor.close();
+        if (router != null) {
+            router.getExecutor().shutdownNow();
+            router.getSendExecutor().shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void floodsEveryNeighborFromAPoolOfOne() throws Exception {
+        router = router("pool", 1);
+        Vector<Link> links = new Vector<>();
+        links.add(link(listen(), 2));
+        links.add(link(listen(), 3));
+        Vector<LSA> lsas = new Vector<>(Collections.singletonList(ownLSA()));
+
+        // a broadcast runs on the runner executor and must not wait there for sends queued behind it
+        Future<?> flood = router.getExecutor().submit(new Broadcast(links, lsas, router));
+        for (ServerSocket neighbor : neighbors)
+            assertReceives(neighbor, lsas);
+        flood.get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, router.getStats().updatesSent.get());
+    }
+
+    @Test(timeout = 10000)
+    public void refusedNeighborDoesNotHoldUpTheOthers() throws Exception {
+        router = router("cached", 16);
+        ServerSocket up = listen();
+        ServerSocket down = listen();
+        down.close();
+
+        Vector<Link> links = new Vector<>();
+        links.add(link(down, 2));
+        links.add(link(up, 3));
+        Vector<LSA> lsas = new Vector<>(Collections.singletonList(ownLSA()));
+
+        Future<?> flood = router.getExecutor().submit(new Broadcast(links, lsas, router));
+        assertReceives(up, lsas);
+        flood.get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, router.getStats().updatesSent.get());
+    }
+
+    @Test(timeout = 10000)
+    public void neighborThatMissedADeltaGetsTheWholeDatabase() throws Exception {
+        router = router("cached", 16, "delta");
+        ServerSocket down = listen();
+        int port = down.getLocalPort();
+        down.close();
+        router.addLink(link(down, 2));
+
+        router.flood(new Vector<>(), true); // own LSA is refused and marked flooded anyway
+        assertEquals(0, router.getStats().updatesSent.get());
+
+        ServerSocket up = new ServerSocket(port);
+        neighbors.add(up);
+        router.flood(new Vector<>(), true); // nothing changed since
+        assertReceives(up, Collections.singletonList(router.getLsd().getFromStore(SELF)));
+        assertEquals(1, router.getStats().updatesSent.get());
+    }
+
+    private static void assertReceives(ServerSocket neighbor, List<LSA> lsas) throws IOException {
+        try (Socket connection = neighbor.accept()) {
+            SOSPFPacket packet = PacketCodec.readFrame(new DataInputStream(new BufferedInputStream(connection.getInputStream())));
+            assertEquals(SELF, packet.srcIP);
+            assertEquals(lsas.size(), packet.lsaArray.size());
+            assertEquals(lsas.get(0).linkStateID, packet.lsaArray.get(0).linkStateID);
+            assertEquals(lsas.get(0).lsaSeqNumber, packet.lsaArray.get(0).lsaSeqNumber);
+        }
+    }
+
+    private Router router(String executor, int poolSize) throws IOException {
+        return router(executor, poolSize, "full");
+    }
+
+    private Router router(String executor, int poolSize, String flooding) throws IOException {
+        File conf = File.createTempFile("router", ".conf");
+        conf.deleteOnExit();
+        String settings = "socs.network.router.ip=\"" + SELF + "\"\n"
+                + "socs.network.router.port=1\n"
+                + "socs.network.router.executor=\"" + executor + "\"\n"
+                + "socs.network.router.poolSize=" + poolSize + "\n"
+                + "socs.network.router.flooding=\"" + flooding + "\"\n";
+        Files.write(conf.toPath(), settings.getBytes(StandardCharsets.UTF_8));
+        return new Router(new Configuration(conf.getPath()));
+    }
+
+    private Link link(ServerSocket socket, int host) {
+        RouterDescription neighbor = new RouterDescription.RouterDescriptionBuilder()
+                .TWO_WAY()
+                .processIPAddress("127.0.0.1")
+                .processPortNumber((short) socket.getLocalPort())
+                .simulatedIPAddress(IPv4.parse("10.0.0." + host))
+                .build();
+        return new Link(router.getRd(), neighbor, (short) 1);
+    }
+
+    /**
+     * Process ports are shorts, so listen below the ephemeral range
+     */
+    private ServerSocket listen() throws IOException {
+        for (int port = 21000; port < Short.MAX_VALUE; port++) {
+            try {
+                ServerSocket neighbor = new ServerSocket(port);
+                neighbors.add(neighbor);
+                return neighbor;
+            } catch (IOException e) {
+                // taken, try the next one
+            }
+        }
+        throw new IOException("No free port");
+    }
+
+    private static LSA ownLSA() {
+        return new LSA(SELF, 7, false, Collections.singletonList(new LinkDescription(SELF, -1, 0)));
+    }
+}
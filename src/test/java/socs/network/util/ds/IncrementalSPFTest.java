@@ -0,0 +1,112 @@
+package socs.network.util.ds;
+
+import org.junit.Test;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+import socs.network.util.IPv4;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the incremental shortest-path tree against a full SPF after every change of random databases.
+ */
+public class IncrementalSPFTest {
+
+    private static final int TRIALS = 300;
+    private static final int CHANGES = 60;
+
+    @Test
+    public void matchesFullSPFAfterEveryChange() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < TRIALS; trial++) {
+            int routers = 2 + random.nextInt(12);
+            Map<IPv4, LSA> store = new HashMap<>();
+            IncrementalSPF spf = new IncrementalSPF(router(0));
+
+            for (int change = 0; change < CHANGES; change++) {
+                IPv4 id = router(random.nextInt(routers));
+                if (random.nextInt(5) == 0) {
+                    store.remove(id);
+                    spf.update(id, null);
+                } else {
+                    LSA lsa = randomLSA(random, id, routers);
+                    store.put(id, lsa);
+                    spf.update(id, lsa.links);
+                }
+                assertMatchesFullSPF("trial " + trial + ", change " + change, spf, store.values());
+            }
+        }
+    }
+
+    @Test
+    public void removingEveryLSALeavesOnlyTheSource() {
+        Random random = new Random(11);
+        Map<IPv4, LSA> store = new HashMap<>();
+        IncrementalSPF spf = new IncrementalSPF(router(0));
+        for (int i = 0; i < 8; i++) {
+            LSA lsa = randomLSA(random, router(i), 8);
+            store.put(lsa.linkStateID, lsa);
+            spf.update(lsa.linkStateID, lsa.links);
+        }
+        for (int i = 7; i > 0; i--) {
+            store.remove(router(i));
+            spf.update(router(i), null);
+            assertMatchesFullSPF("removed " + i, spf, store.values());
+        }
+        store.remove(router(0));
+        spf.update(router(0), null);
+        assertEquals(0, spf.getDistance(router(0)));
+        assertEquals(1, spf.getDistances().size());
+    }
+
+    private static void assertMatchesFullSPF(String step, IncrementalSPF spf, Collection<LSA> lsas) {
+        Map<IPv4, Integer> distance = new HashMap<>();
+        Map<IPv4, HashSet<IPv4>> predecessors = new HashMap<>();
+
+        CompactGraph graph = new CompactGraph(lsas);
+        RouterIdTable ids = graph.getIds();
+        int source = ids.getId(spf.getSource());
+        if (source < 0) {
+            distance.put(spf.getSource(), 0);
+        } else {
+            CompactDijkstra full = new CompactDijkstra(graph);
+            full.start(source);
+            for (int i = 0; i < full.getSettledCount(); i++) {
+                int vertex = full.getSettled(i);
+                distance.put(ids.getName(vertex), full.getDistance(vertex));
+                HashSet<IPv4> previous = new HashSet<>();
+                for (int hop : full.getPredecessors(vertex))
+                    previous.add(ids.getName(hop));
+                if (!previous.isEmpty())
+                    predecessors.put(ids.getName(vertex), previous);
+            }
+        }
+
+        assertEquals(step + ": distances", distance, spf.getDistances());
+        Map<IPv4, HashSet<IPv4>> incremental = new HashMap<>();
+        for (Map.Entry<IPv4, List<IPv4>> entry : spf.getPredecessors().entrySet())
+            incremental.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        assertEquals(step + ": predecessors", predecessors, incremental);
+    }
+
+    private static LSA randomLSA(Random random, IPv4 id, int routers) {
+        List<LinkDescription> links = new ArrayList<>();
+        links.add(new LinkDescription(id, -1, 0));
+        int count = random.nextInt(4);
+        for (int i = 0; i < count; i++)
+            links.add(new LinkDescription(router(random.nextInt(routers)), i, 1 + random.nextInt(3)));
+        return new LSA(id, 0, false, links);
+    }
+
+    private static IPv4 router(int i) {
+        return IPv4.parse("192.168.0." + (i + 1));
+    }
+}